@@ -0,0 +1,321 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Micro benchmarks of the GA hot paths: load(), initialise(), evaluate(), the
+ * scalar and vector TourEvaluator, each selection, crossover and mutation
+ * operator, and whole generations.
+ * Each benchmark is warmed up before it is measured, so the JIT has compiled
+ * it, and runs on the benchmark thread only, so the allocation counter of that
+ * thread gives the bytes allocated per operation. Console output is discarded
+ * while measuring.
+ * Instances are TSPLIB files, or a number of cities for a seeded random EUC_2D
+ * instance. Results can be saved as CSV and compared with an earlier run, to
+ * catch regressions between versions.
+ * This is a quick check that runs from a plain javac or BlueJ build, with no
+ * dependencies: every benchmark runs in this one JVM, so a benchmark can be
+ * affected by the profile left by those before it. The same benchmarks run
+ * under JMH, each in forked JVMs and with the GC profiler, from the Maven
+ * build, see jmh/ and README.TXT; use those for figures to rely on.
+ *
+ * Usage: java Benchmark [-o results.csv] [-b baseline.csv] [instance ...]
+ * The vector evaluator is only measured when it has been compiled from
+ * vector/ (see README.TXT) and is run with --add-modules
+ * jdk.incubator.vector, on instances of up to 4096 cities.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class Benchmark
+{
+    // ########## CONSTANTS ##########
+    private static final String[] INSTANCES = {"groetschel.tsp", "dantzig.tsp", "1000", "10000", "100000"};
+    private static final int WARMUP_ITERATIONS = 5; // Iterations before measuring
+    private static final int ITERATIONS = 5; // Measured iterations
+    private static final long ITERATION_TIME = 1000; // Length of an iteration in ms
+    private static final long SEED = 42; // Seed of the synthetic instances and the GA
+    private static final int SIDE = 10000; // Synthetic cities lie in a SIDE x SIDE square
+    private static final int PAIRS = 1024; // Random parent pairs, reused in turn
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    // ########## VARIABLES ##########
+    private static volatile long sink; // Results are written here so no work is removed
+    private final List<String> rows = new ArrayList<String>(); // CSV rows of the results
+    private final Map<String, Double> baseline = new HashMap<String, Double>(); // Earlier ops/s
+
+    /**
+     * A benchmarked operation.
+     */
+    private interface Operation
+    {
+        /**
+         * @return Any result of the operation, to be kept.
+         */
+        long run();
+    }
+
+    /**
+     * Runs the benchmarks.
+     * @param args Options and instances, see the class comment.
+     */
+    public static void main(String[] args) throws IOException {
+        Benchmark benchmark = new Benchmark();
+        List<String> instances = new ArrayList<String>();
+        String output = null;
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("-o")) {
+                output = args[++i];
+            }
+            else if(args[i].equals("-b")) {
+                benchmark.readBaseline(args[++i]);
+            }
+            else {
+                instances.add(args[i]);
+            }
+        }
+        if(instances.isEmpty()) {
+            instances.addAll(List.of(INSTANCES));
+        }
+        System.out.println(String.format("%-18s %-16s %14s %10s %12s %10s %5s %8s",
+            "Benchmark", "Instance", "ops/s", "stdev", "bytes/op", "MB/s", "GCs", "change"));
+        for(String instance : instances) {
+            benchmark.run(instance);
+        }
+        if(output != null) {
+            Files.write(Paths.get(output), benchmark.rows);
+        }
+    }
+
+    /**
+     * Runs every benchmark on one instance.
+     * @param instance A TSPLIB file, or a number of cities.
+     */
+    private void run(String instance) throws IOException {
+        String filename = instance;
+        String name = instance;
+        if(instance.matches("\\d+")) {
+            filename = synthetic(Integer.parseInt(instance)).toString();
+            name = "random"+instance;
+        }
+        String file = filename;
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        TSP_GA ga = new TSP_GA(file);
+        System.setOut(out);
+        ga.reseed(new GARandom(SEED));
+        ga.start();
+        int size = ga.size();
+        // Parents are drawn up front so the operators are timed alone
+        int[] parents = new int[2*PAIRS];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for(int i = 0; i < parents.length; i++) {
+            parents[i] = random.nextInt(ga.populationSize());
+        }
+        int[] pair = new int[1];
+
+        measure("load", name, () -> {
+            System.setOut(QUIET);
+            ga.load(file);
+            System.setOut(out);
+            return ga.size();
+        });
+        measure("initialise", name, () -> {
+            ga.initialise();
+            return 0;
+        });
+        ga.evaluate(); // Score the last initialised population
+        measure("evaluate", name, () -> {
+            ga.evaluate();
+            return ga.bestFitness();
+        });
+        // Each evaluator alone, on the same population, checked to agree
+        int populationSize = ga.populationSize();
+        int[] scalarFitness = new int[populationSize], vectorFitness = new int[populationSize];
+        TourEvaluator scalar = TourEvaluator.create(ga.cost(), TSP_GA.SCALAR_EVALUATION);
+        TourEvaluator vector = TourEvaluator.create(ga.cost(), TSP_GA.VECTOR_EVALUATION);
+        scalar.evaluate(ga.parents(), 0, populationSize, scalarFitness);
+        vector.evaluate(ga.parents(), 0, populationSize, vectorFitness);
+        if(!Arrays.equals(scalarFitness, vectorFitness)) {
+            throw new IllegalStateException("Vector evaluation differs from scalar: " + name);
+        }
+        measure("evaluateScalar", name, () -> {
+            scalar.evaluate(ga.parents(), 0, populationSize, scalarFitness);
+            return scalarFitness[0];
+        });
+        if(vector.vectorised()) {
+            measure("evaluateVector", name, () -> {
+                vector.evaluate(ga.parents(), 0, populationSize, vectorFitness);
+                return vectorFitness[0];
+            });
+        }
+        measure("tournamentSelect", name, () -> ga.tournamentSelect());
+        ga.buildRoulette();
+        measure("buildRoulette", name, () -> {
+            ga.buildRoulette();
+            return 0;
+        });
+        measure("rouletteSelect", name, () -> ga.rouletteSelect());
+        measure("pmx", name, () -> {
+            int p = pair[0]++ & (PAIRS-1);
+            ga.partiallyMappedCrossover(parents[2*p], parents[2*p+1], 0, 1);
+            return ga.children().get(size-1);
+        });
+        measure("cycleCrossover", name, () -> {
+            int p = pair[0]++ & (PAIRS-1);
+            ga.cycleCrossover(parents[2*p], parents[2*p+1], 0, 1);
+            return ga.children().get(size-1);
+        });
+        measure("exchangeMutation", name, () -> ga.exchangeMutation(parents[pair[0]++ & (PAIRS-1)], 0));
+        measure("inversionMutation", name, () -> ga.inversionMutation(parents[pair[0]++ & (PAIRS-1)], 0));
+        measure("generation", name, () -> {
+            ga.step();
+            return ga.bestFitness();
+        });
+    }
+
+    /**
+     * Warms up and measures an operation, then prints and records the result.
+     * An operation that takes longer than the whole benchmark time on its own is
+     * timed once.
+     * @param benchmark The name of the benchmark.
+     * @param instance The name of the instance.
+     * @param operation The operation to time.
+     */
+    private void measure(String benchmark, String instance, Operation operation) {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long budget = (WARMUP_ITERATIONS+ITERATIONS)*ITERATION_TIME*1000000L;
+        double[] rates = new double[ITERATIONS];
+        int iterations = ITERATIONS;
+        long ops = 0, time = 0, bytes, gcs;
+        long startTime = System.nanoTime();
+        sink += operation.run();
+        long single = System.nanoTime()-startTime;
+        if(single > budget) {
+            // Too slow to repeat, time it once more now it has run
+            long startBytes = threads.getThreadAllocatedBytes(thread);
+            gcs = gcCount();
+            startTime = System.nanoTime();
+            sink += operation.run();
+            time = System.nanoTime()-startTime;
+            bytes = threads.getThreadAllocatedBytes(thread)-startBytes;
+            gcs = gcCount()-gcs;
+            ops = 1;
+            iterations = 1;
+            rates[0] = 1e9/time;
+        }
+        else {
+            for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+                iteration(operation, new long[2]);
+            }
+            long startBytes = threads.getThreadAllocatedBytes(thread);
+            gcs = gcCount();
+            for(int i = 0; i < ITERATIONS; i++) {
+                long[] result = new long[2]; // Operations and time
+                iteration(operation, result);
+                ops += result[0];
+                time += result[1];
+                rates[i] = result[0]*1e9/result[1];
+            }
+            bytes = threads.getThreadAllocatedBytes(thread)-startBytes;
+            gcs = gcCount()-gcs;
+        }
+        double mean = ops*1e9/time;
+        double variance = 0;
+        for(int i = 0; i < iterations; i++) {
+            variance += (rates[i]-mean)*(rates[i]-mean);
+        }
+        double stdev = iterations > 1 ? Math.sqrt(variance/(iterations-1)) : 0;
+        double bytesPerOp = (double)bytes/ops;
+        double megabytes = bytes/(time/1e9)/(1 << 20);
+        Double before = baseline.get(benchmark+","+instance);
+        String change = before == null ? "" : String.format("%+.1f%%", 100*(mean-before)/before);
+        System.out.println(String.format("%-18s %-16s %14.1f %10.1f %12.1f %10.1f %5d %8s",
+            benchmark, instance, mean, stdev, bytesPerOp, megabytes, gcs, change));
+        rows.add(benchmark+","+instance+","+mean+","+stdev+","+bytesPerOp);
+    }
+
+    /**
+     * Runs an operation for one iteration, checking the clock after batches of
+     * operations that grow until a batch takes at least a millisecond.
+     * @param operation The operation to run.
+     * @param result Set to the number of operations run and the time taken in ns.
+     */
+    private static void iteration(Operation operation, long[] result) {
+        long end = ITERATION_TIME*1000000L;
+        long startTime = System.nanoTime(), now = startTime;
+        long ops = 0, total = 0;
+        int batch = 1;
+        while(now-startTime < end) {
+            long batchStart = now;
+            for(int i = 0; i < batch; i++) {
+                total += operation.run();
+            }
+            ops += batch;
+            now = System.nanoTime();
+            if(now-batchStart < 1000000L && batch < (1 << 30)) {
+                batch *= 2;
+            }
+        }
+        sink += total;
+        result[0] = ops;
+        result[1] = now-startTime;
+    }
+
+    /**
+     * @return The number of garbage collections so far.
+     */
+    private static long gcCount() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Writes a random EUC_2D instance, the same for every run, and for the JMH
+     * benchmarks.
+     * @param size The number of cities.
+     * @return The file written, deleted when the JVM exits.
+     */
+    static Path synthetic(int size) throws IOException {
+        Path file = Files.createTempFile("random"+size+"-", ".tsp");
+        file.toFile().deleteOnExit();
+        SplittableRandom random = new SplittableRandom(SEED+size);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("NAME: random"+size+"\nTYPE: TSP\nDIMENSION: "+size
+                +"\nEDGE_WEIGHT_TYPE: EUC_2D\nNODE_COORD_SECTION\n");
+            for(int i = 1; i <= size; i++) {
+                writer.write(i+" "+random.nextInt(SIDE)+" "+random.nextInt(SIDE)+"\n");
+            }
+            writer.write("EOF\n");
+        }
+        return file;
+    }
+
+    /**
+     * Reads the results of an earlier run, written with -o.
+     * @param filename The CSV file.
+     */
+    private void readBaseline(String filename) throws IOException {
+        for(String line : Files.readAllLines(Paths.get(filename))) {
+            String[] fields = line.split(",");
+            baseline.put(fields[0]+","+fields[1], Double.parseDouble(fields[2]));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of a GA run, so a long run can be resumed exactly where it
+ * stopped, see TSP_GA.setCheckpoint() and TSP_GA.resume().
+ * A snapshot holds the population and fitness, the loop state of the run
+ * (generation, best so far, restarts, time taken), the random generator state
+ * and the config, with a CRC32 to catch a damaged file. Cities are stored in 2
+ * bytes each for TSPs of up to 65536 cities, otherwise 4.
+ * The GA thread only copies the run into a reused buffer; a background thread
+ * writes it to a temporary file, forces it to disk and renames it over the
+ * checkpoint, so the checkpoint on disk is always a whole snapshot even if the
+ * JVM is killed mid write. A periodic snapshot taken while the last is still
+ * being written is skipped rather than waited for, and counted, see
+ * skipped(); the last snapshot of a run waits instead, so the checkpoint ends
+ * where the run did.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class Checkpoint
+{
+    // ########## CONSTANTS ##########
+    private static final int MAGIC = 0x54535047; // "TSPG"
+    private static final int VERSION = 1;
+    private static final int MAX_NARROW = 65536; // Most cities stored in 2 bytes each
+
+    // ########## VARIABLES ##########
+    // The state of the run, set before save() or read by load()
+    int size; // Number of cities
+    int populationSize;
+    int generation; // Next generation to run
+    int bestSoFar; // Best fitness of the run
+    int improved; // Generation of the last improvement or restart
+    int restarts;
+    long elapsed; // Time taken by the run, in ns
+    long seed, gamma; // Random generator state, see GARandom
+    long localGain, variationGain, localTime, reused; // Run statistics
+    String stopped; // Why the run stopped, null if it has not
+    String config; // GAConfig.toString() of the run
+    int[] fitness; // Set by load() only
+    int[][] population;
+    private final Path file; // The checkpoint
+    private final Path temp; // Written before being renamed to file
+    private ExecutorService writer; // Background writer, started by the first save()
+    private Future<?> pending; // The last write
+    private ByteBuffer buffer; // The snapshot being written, reused
+    private long saved, skipped; // Snapshots written and skipped
+
+    /**
+     * @param filename The checkpoint file, replaced by each snapshot.
+     */
+    public Checkpoint(String filename) {
+        file = Paths.get(filename).toAbsolutePath();
+        temp = file.resolveSibling(file.getFileName()+".tmp");
+    }
+
+    /**
+     * Takes a snapshot of the run and writes it in the background, unless the
+     * last snapshot is still being written and this one need not wait.
+     * @param population The population, populationSize routes of size cities.
+     * @param fitness The fitness of each individual.
+     * @param wait True to wait for the last snapshot to be written rather than
+     *             skip this one, for the last snapshot of a run.
+     * @return False if the snapshot was skipped.
+     * @throws RuntimeException If the last snapshot could not be written.
+     */
+    boolean save(Population population, int[] fitness, boolean wait) {
+        if(!wait && pending != null && !pending.isDone()) {
+            skipped++; // Still writing the last one
+            return false;
+        }
+        await();
+        byte[] stoppedBytes = stopped == null ? new byte[0] : stopped.getBytes(StandardCharsets.UTF_8);
+        byte[] configBytes = config.getBytes(StandardCharsets.UTF_8);
+        boolean narrow = size <= MAX_NARROW;
+        long length = 4*8+8*8+8+stoppedBytes.length+configBytes.length
+            +4L*populationSize+(long)populationSize*size*(narrow ? 2 : 4)+4;
+        if(length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Population too large to checkpoint");
+        }
+        if(buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate((int)length);
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(populationSize)
+            .putInt(generation).putInt(bestSoFar).putInt(improved).putInt(restarts)
+            .putLong(elapsed).putLong(seed).putLong(gamma).putLong(localGain)
+            .putLong(variationGain).putLong(localTime).putLong(reused).putLong(0); // Spare
+        buffer.putInt(stopped == null ? -1 : stoppedBytes.length).put(stoppedBytes);
+        buffer.putInt(configBytes.length).put(configBytes);
+        for(int i = 0; i < populationSize; i++) {
+            buffer.putInt(fitness[i]);
+        }
+        for(int i = 0; i < populationSize; i++) {
+            int route = population.offset(i);
+            if(narrow) {
+                for(int j = 0; j < size; j++) {
+                    buffer.putChar((char)population.get(route+j));
+                }
+            } else {
+                for(int j = 0; j < size; j++) {
+                    buffer.putInt(population.get(route+j));
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int)crc.getValue());
+        buffer.flip();
+        if(writer == null) {
+            writer = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "Checkpoint writer");
+                thread.setDaemon(true); // A write cut off by exit leaves the last checkpoint
+                return thread;
+            });
+        }
+        pending = writer.submit(() -> {
+            write();
+            return null;
+        });
+        saved++;
+        return true;
+    }
+
+    /**
+     * @return The number of snapshots written, or being written.
+     */
+    public long saved() {
+        return saved;
+    }
+
+    /**
+     * @return The number of snapshots skipped as the last was still being
+     *         written.
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Waits for the last snapshot to be written.
+     * @throws RuntimeException If it could not be written.
+     */
+    void await() {
+        if(pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted writing checkpoint: " + file, e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Could not write checkpoint: " + file, e.getCause());
+        }
+        finally {
+            pending = null;
+        }
+    }
+
+    /**
+     * Waits for the last snapshot to be written and stops the writer thread.
+     */
+    public void close() {
+        try {
+            await();
+        }
+        finally {
+            if(writer != null) {
+                writer.shutdown();
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the buffer to the temporary file, then renames it over the
+     * checkpoint, on the writer thread.
+     */
+    private void write() throws IOException {
+        ByteBuffer data = buffer.duplicate();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true); // On disk before it replaces the last checkpoint
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint.
+     * @param filename The checkpoint file.
+     * @return The snapshot, with its population and fitness.
+     * @throws IllegalArgumentException If the file is not a whole checkpoint.
+     */
+    public static Checkpoint load(String filename) {
+        ByteBuffer data;
+        try {
+            data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not read checkpoint: " + filename, e);
+        }
+        if(data.remaining() < 4*8+8*8+4 || data.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a checkpoint: " + filename);
+        }
+        if(data.getInt() != VERSION) {
+            throw new IllegalArgumentException("Unsupported checkpoint version: " + filename);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.limit()-4);
+        if((int)crc.getValue() != data.getInt(data.limit()-4)) {
+            throw new IllegalArgumentException("Damaged checkpoint: " + filename);
+        }
+        Checkpoint checkpoint = new Checkpoint(filename);
+        checkpoint.size = data.getInt();
+        checkpoint.populationSize = data.getInt();
+        checkpoint.generation = data.getInt();
+        checkpoint.bestSoFar = data.getInt();
+        checkpoint.improved = data.getInt();
+        checkpoint.restarts = data.getInt();
+        checkpoint.elapsed = data.getLong();
+        checkpoint.seed = data.getLong();
+        checkpoint.gamma = data.getLong();
+        checkpoint.localGain = data.getLong();
+        checkpoint.variationGain = data.getLong();
+        checkpoint.localTime = data.getLong();
+        checkpoint.reused = data.getLong();
+        data.getLong(); // Spare
+        checkpoint.stopped = string(data);
+        checkpoint.config = string(data);
+        int size = checkpoint.size, populationSize = checkpoint.populationSize;
+        checkpoint.fitness = new int[populationSize];
+        for(int i = 0; i < populationSize; i++) {
+            checkpoint.fitness[i] = data.getInt();
+        }
+        checkpoint.population = new int[populationSize][size];
+        for(int i = 0; i < populationSize; i++) {
+            int[] route = checkpoint.population[i];
+            for(int j = 0; j < size; j++) {
+                route[j] = size <= MAX_NARROW ? data.getChar() : data.getInt();
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return A string of the checkpoint, null if stored as length -1.
+     */
+    private static String string(ByteBuffer data) {
+        int length = data.getInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,165 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A cost matrix for a TSPLIB instance given by city coordinates.
+ * Costs are computed when needed using the TSPLIB distance functions, so only
+ * the coordinates are stored (O(SIZE) memory rather than O(SIZE^2)).
+ * An optional cache keeps recently used costs, which helps for the more
+ * expensive GEO distances.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class CoordinateCostMatrix implements CostMatrix
+{
+    // ########## CONSTANTS ##########
+    public static final int EUC_2D = 0; // Rounded euclidean distance
+    public static final int CEIL_2D = 1; // Rounded up euclidean distance
+    public static final int ATT = 2; // Pseudo euclidean distance
+    public static final int GEO = 3; // Geographical distance
+    private static final double PI = 3.141592; // As specified by TSPLIB
+    private static final double RRR = 6378.388; // Earth radius as specified by TSPLIB
+    private static final int VALUE_BITS = 24; // Bits of a cache entry holding the cost
+    private static final VarHandle CACHE = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // ########## VARIABLES ##########
+    private final int type; // The distance function
+    private final double[] x; // x coordinate, or latitude in radians for GEO
+    private final double[] y; // y coordinate, or longitude in radians for GEO
+    // Cost cache, each entry is the pair key shifted above the cost, 0 if empty
+    private final long[] cache;
+    private final int cacheMask;
+
+    /**
+     * @param type The distance function, one of EUC_2D, CEIL_2D, ATT or GEO.
+     * @param x The x coordinate of each city.
+     * @param y The y coordinate of each city.
+     * @param cacheBits The log 2 of the number of cached costs, 0 for no cache.
+     */
+    public CoordinateCostMatrix(int type, double[] x, double[] y, int cacheBits) {
+        this.type = type;
+        this.x = x.clone();
+        this.y = y.clone();
+        if(type == GEO) {
+            for(int i = 0; i < x.length; i++) {
+                this.x[i] = geoRadians(x[i]);
+                this.y[i] = geoRadians(y[i]);
+            }
+        }
+        cache = cacheBits > 0 ? new long[1 << cacheBits] : null;
+        cacheMask = (1 << cacheBits)-1;
+    }
+
+    /**
+     * @param name A TSPLIB EDGE_WEIGHT_TYPE.
+     * @return The matching distance function, or -1 if not supported.
+     */
+    public static int type(String name) {
+        switch(name) {
+            case "EUC_2D":
+                return EUC_2D;
+            case "CEIL_2D":
+                return CEIL_2D;
+            case "ATT":
+                return ATT;
+            case "GEO":
+                return GEO;
+            default:
+                return -1;
+        }
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * @param city A city.
+     * @return Its x coordinate, or latitude in radians for GEO.
+     */
+    double x(int city) {
+        return x[city];
+    }
+
+    /**
+     * @param city A city.
+     * @return Its y coordinate, or longitude in radians for GEO.
+     */
+    double y(int city) {
+        return y[city];
+    }
+
+    /**
+     * @return The number of bytes used to store the coordinates and cache.
+     */
+    public long footprint() {
+        return 16L*x.length+(cache == null ? 0 : 8L*cache.length);
+    }
+
+    public int cost(int from, int to) {
+        if(from == to) {
+            return 0;
+        }
+        if(cache == null) {
+            return distance(from, to);
+        }
+        // The costs are symmetric, so cache each pair once
+        long key = from < to ? (long)from*x.length+to : (long)to*x.length+from;
+        int slot = (int)(mix(key) & cacheMask);
+        // Opaque access keeps each entry read and written whole between threads
+        long entry = (long)CACHE.getOpaque(cache, slot);
+        if(entry != 0 && (entry >>> VALUE_BITS) == key) {
+            return (int)(entry & ((1 << VALUE_BITS)-1));
+        }
+        int cost = distance(from, to);
+        if(cost < (1 << VALUE_BITS) && key < (1L << (64-VALUE_BITS))) {
+            CACHE.setOpaque(cache, slot, (key << VALUE_BITS) | cost);
+        }
+        return cost;
+    }
+
+    /**
+     * Computes a cost using the TSPLIB distance function of this instance.
+     * @param from The city travelled from.
+     * @param to The city travelled to.
+     * @return The cost of travelling between the two cities.
+     */
+    private int distance(int from, int to) {
+        double dx = x[from]-x[to], dy = y[from]-y[to];
+        switch(type) {
+            case CEIL_2D:
+                return (int)Math.ceil(Math.sqrt(dx*dx+dy*dy));
+            case ATT:
+                double r = Math.sqrt((dx*dx+dy*dy)/10.0);
+                int t = (int)(r+0.5);
+                return t < r ? t+1 : t;
+            case GEO:
+                double q1 = Math.cos(y[from]-y[to]);
+                double q2 = Math.cos(x[from]-x[to]);
+                double q3 = Math.cos(x[from]+x[to]);
+                return (int)(RRR*Math.acos(0.5*((1.0+q1)*q2-(1.0-q1)*q3))+1.0);
+            default:
+                return (int)(Math.sqrt(dx*dx+dy*dy)+0.5);
+        }
+    }
+
+    /**
+     * Converts a TSPLIB GEO coordinate (degrees.minutes) to radians.
+     * @param value The coordinate.
+     * @return The coordinate in radians.
+     */
+    private static double geoRadians(double value) {
+        int deg = (int)value;
+        double min = value-deg;
+        return PI*(deg+5.0*min/3.0)/180.0;
+    }
+
+    /**
+     * @return The key with its bits mixed, to spread keys over the cache.
+     */
+    private static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        return key ^ (key >>> 33);
+    }
+}
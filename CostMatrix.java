@@ -0,0 +1,39 @@
+/**
+ * The travel costs between the cities of a TSP instance.
+ * The GA only reads costs through this interface, so an instance can be stored
+ * as a full matrix or have its costs computed when needed.
+ * Costs may differ by direction (an asymmetric TSP), see symmetric(), and a
+ * sparse TSP may have no edge between two cities, see SparseCostMatrix.
+ * Implementations must be safe to read from several threads at once.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public interface CostMatrix
+{
+    /**
+     * @return The number of cities.
+     */
+    int size();
+
+    /**
+     * @param from The city travelled from.
+     * @param to The city travelled to.
+     * @return The cost of travelling from one city to the other.
+     */
+    int cost(int from, int to);
+
+    /**
+     * @return The number of bytes used to store the costs, so caches can
+     *         account for what they hold.
+     */
+    long footprint();
+
+    /**
+     * @return True if every cost is the same both ways round, so a route
+     *         costs the same in either direction.
+     */
+    default boolean symmetric() {
+        return true;
+    }
+}
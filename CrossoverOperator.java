@@ -0,0 +1,23 @@
+/**
+ * A way of combining two parents of a GA into two children.
+ * The built in methods are PMX and CYCLE.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public interface CrossoverOperator
+{
+    CrossoverOperator PMX = TSP_GA::partiallyMappedCrossover;
+    CrossoverOperator CYCLE = TSP_GA::cycleCrossover;
+
+    /**
+     * Writes two children, which must keep city 0 at index 0. Parents are read
+     * from ga.parents() and children written to ga.children().
+     * @param ga The GA breeding.
+     * @param parent1 The index of the first parent.
+     * @param parent2 The index of the second parent.
+     * @param child1 The individual to write the first child to.
+     * @param child2 The individual to write the second child to.
+     */
+    void cross(TSP_GA ga, int parent1, int parent2, int child1, int child2);
+}
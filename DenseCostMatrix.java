@@ -0,0 +1,44 @@
+/**
+ * A cost matrix held in full as an int[SIZE][SIZE].
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class DenseCostMatrix implements CostMatrix
+{
+    private final int[][] cost; // The cost between every pair of cities
+    private final boolean symmetric; // Whether cost[i][j] == cost[j][i] for all i, j
+
+    /**
+     * @param cost The full cost matrix, which must not be changed afterwards.
+     */
+    public DenseCostMatrix(int[][] cost) {
+        this.cost = cost;
+        boolean same = true;
+        for(int i = 0; i < cost.length && same; i++) {
+            for(int j = 0; j < i && same; j++) {
+                same = cost[i][j] == cost[j][i];
+            }
+        }
+        symmetric = same;
+    }
+
+    public int size() {
+        return cost.length;
+    }
+
+    /**
+     * @return The number of bytes used to store the costs, with the row headers.
+     */
+    public long footprint() {
+        return 16L+4L*cost.length+cost.length*(16L+4L*cost.length);
+    }
+
+    public int cost(int from, int to) {
+        return cost[from][to];
+    }
+
+    public boolean symmetric() {
+        return symmetric;
+    }
+}
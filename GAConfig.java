@@ -0,0 +1,622 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The settings of a GA run: population size, generations, tournament size,
+ * mutation chance, the selection, crossover and mutation operators, the local
+ * search stage, and when a run stops or restarts.
+ * A run stops after its generations, or earlier at a time limit, on reaching
+ * a target fitness, or when it has converged: no improvement for a window of
+ * generations, or diversity (see TSP_GA.diversity()) below a floor. On
+ * converging it restarts instead if restartElites is set, keeping that many of
+ * the best individuals and replacing the rest with random ones.
+ * Tours can be hashed by their edges (see TourHash) so that a child the same as
+ * a tour of the last or current generation reuses its fitness, and can be bred
+ * again instead of kept.
+ * Shares of the first population can be built by the heuristics of Seeding
+ * rather than at random.
+ * A config starts with the defaults below and can be changed at run time, in
+ * code or by name with set(), e.g. set("selection", "roulette"), so tuning
+ * needs no recompiling. toString() lists every setting by name in the same
+ * form, and parse() reads it back. Custom operators are named by registering
+ * them, see registerSelection(), registerCrossover() and registerMutation();
+ * a config with an operator that is not registered cannot be parsed back, so
+ * cannot be checkpointed, see restorable().
+ * A TSP_GA copies its config when it is given one, so a config can be changed
+ * and reused while runs are in progress.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class GAConfig
+{
+    // ########## CONSTANTS ##########
+    private static final int POPULATION_SIZE = 150; // The population size
+    private static final int GENERATIONS = 5000; // The number of generations
+    private static final int TOURNAMENT_SIZE = 5; // The tournament size
+    private static final int MUTATION_CHANCE = 5; // Mutation percentage change
+    private static final int LOCAL_SEARCH_BUDGET = 2000; // Local search microseconds per generation
+    private static final int LOCAL_SEARCH_EFFORT = 0; // Cities local search looks at per generation, 0 for no limit
+    // Operators by name, built in or registered. Guarded by the class lock.
+    private static final Map<String, SelectionOperator> SELECTIONS = new LinkedHashMap<String, SelectionOperator>();
+    private static final Map<String, CrossoverOperator> CROSSOVERS = new LinkedHashMap<String, CrossoverOperator>();
+    private static final Map<String, MutationOperator> MUTATIONS = new LinkedHashMap<String, MutationOperator>();
+    static {
+        SELECTIONS.put("tournament", SelectionOperator.TOURNAMENT);
+        SELECTIONS.put("roulette", SelectionOperator.ROULETTE);
+        CROSSOVERS.put("pmx", CrossoverOperator.PMX);
+        CROSSOVERS.put("cycle", CrossoverOperator.CYCLE);
+        MUTATIONS.put("exchange", MutationOperator.EXCHANGE);
+        MUTATIONS.put("inversion", MutationOperator.INVERSION);
+    }
+
+    // ########## VARIABLES ##########
+    private int populationSize = POPULATION_SIZE;
+    private int generations = GENERATIONS;
+    private int tournamentSize = TOURNAMENT_SIZE;
+    private int mutationChance = MUTATION_CHANCE;
+    private SelectionOperator selection = SelectionOperator.TOURNAMENT;
+    private CrossoverOperator crossover = CrossoverOperator.CYCLE;
+    private MutationOperator mutation = MutationOperator.INVERSION;
+    private int localSearch = TSP_GA.NO_LOCAL_SEARCH;
+    private int localSearchBudget = LOCAL_SEARCH_BUDGET; // In microseconds, 0 for none
+    private int localSearchEffort = LOCAL_SEARCH_EFFORT; // In cities looked at, 0 for none
+    private long timeLimit; // In ms, 0 for none
+    private int target = Integer.MIN_VALUE; // Integer.MIN_VALUE for none
+    private int stagnationLimit; // Generations without improvement, 0 for none
+    private double diversityFloor; // 0 for none
+    private int restartElites; // Individuals kept on a restart, 0 to stop instead
+    private int duplicates = TSP_GA.NO_TOUR_HASH; // Handling of duplicate tours
+    private final int[] seeding = new int[Seeding.METHODS]; // Percentage of the first population from each heuristic
+    private int evaluation = TSP_GA.SCALAR_EVALUATION; // Tour evaluator, see TourEvaluator
+
+    /**
+     * Creates a config with the default settings.
+     */
+    public GAConfig() {
+    }
+
+    /**
+     * Copies a config.
+     * @param source The config to copy.
+     */
+    public GAConfig(GAConfig source) {
+        populationSize = source.populationSize;
+        generations = source.generations;
+        tournamentSize = source.tournamentSize;
+        mutationChance = source.mutationChance;
+        selection = source.selection;
+        crossover = source.crossover;
+        mutation = source.mutation;
+        localSearch = source.localSearch;
+        localSearchBudget = source.localSearchBudget;
+        localSearchEffort = source.localSearchEffort;
+        timeLimit = source.timeLimit;
+        target = source.target;
+        stagnationLimit = source.stagnationLimit;
+        diversityFloor = source.diversityFloor;
+        restartElites = source.restartElites;
+        duplicates = source.duplicates;
+        System.arraycopy(source.seeding, 0, seeding, 0, Seeding.METHODS);
+        evaluation = source.evaluation;
+    }
+
+    /**
+     * Changes a setting by name. The names and values are those printed by
+     * toString(): population, generations, tournament and mutationChance take
+     * whole numbers, selection is tournament or roulette, crossover is pmx or
+     * cycle, mutation is exchange or inversion (or the name of a registered
+     * operator), localSearch is none, offspring
+     * or elite, localSearchBudget is in microseconds (0 for none),
+     * localSearchEffort is a number of cities looked at (0 for none), timeLimit
+     * is in ms (0 for none), target is a fitness or none, stagnation is a number of
+     * generations (0 for none), diversityFloor is between 0 and 1 (0 for none),
+     * restartElites is a number of individuals (0 to stop rather than
+     * restart), duplicates is off, reuse or reject, and nearestNeighbour,
+     * greedyEdge, spaceFillingCurve and randomInsertion are the percentage of
+     * the first population built by each seeding heuristic, and evaluation is
+     * scalar or vector.
+     * @param name The setting.
+     * @param value The new value.
+     * @throws IllegalArgumentException If the setting or value is not valid.
+     */
+    public void set(String name, String value) {
+        switch(name) {
+            case "population":
+                setPopulationSize(parse(name, value));
+                break;
+            case "generations":
+                setGenerations(parse(name, value));
+                break;
+            case "tournament":
+                setTournamentSize(parse(name, value));
+                break;
+            case "mutationChance":
+                setMutationChance(parse(name, value));
+                break;
+            case "selection":
+                setSelection(operator(SELECTIONS, name, value));
+                break;
+            case "crossover":
+                setCrossover(operator(CROSSOVERS, name, value));
+                break;
+            case "mutation":
+                setMutation(operator(MUTATIONS, name, value));
+                break;
+            case "localSearch":
+                setLocalSearch(value.equals("offspring") ? TSP_GA.LOCAL_SEARCH_OFFSPRING
+                    : value.equals("elite") ? TSP_GA.LOCAL_SEARCH_ELITE
+                    : value.equals("none") ? TSP_GA.NO_LOCAL_SEARCH : -1, localSearchBudget);
+                break;
+            case "localSearchBudget":
+                setLocalSearch(localSearch, parse(name, value));
+                break;
+            case "localSearchEffort":
+                setLocalSearch(localSearch, localSearchBudget, parse(name, value));
+                break;
+            case "timeLimit":
+                setTimeLimit(parse(name, value));
+                break;
+            case "target":
+                setTarget(value.equals("none") ? Integer.MIN_VALUE : parse(name, value));
+                break;
+            case "stagnation":
+                setStagnationLimit(parse(name, value));
+                break;
+            case "diversityFloor":
+                try {
+                    setDiversityFloor(Double.parseDouble(value.trim()));
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid "+name+": "+value, e);
+                }
+                break;
+            case "restartElites":
+                setRestartElites(parse(name, value));
+                break;
+            case "duplicates":
+                setDuplicates(value.equals("reuse") ? TSP_GA.REUSE_DUPLICATES
+                    : value.equals("reject") ? TSP_GA.REJECT_DUPLICATES
+                    : value.equals("off") ? TSP_GA.NO_TOUR_HASH : -1);
+                break;
+            case "nearestNeighbour":
+                setSeeding(Seeding.NEAREST_NEIGHBOUR, parse(name, value));
+                break;
+            case "greedyEdge":
+                setSeeding(Seeding.GREEDY_EDGE, parse(name, value));
+                break;
+            case "spaceFillingCurve":
+                setSeeding(Seeding.SPACE_FILLING_CURVE, parse(name, value));
+                break;
+            case "randomInsertion":
+                setSeeding(Seeding.RANDOM_INSERTION, parse(name, value));
+                break;
+            case "evaluation":
+                setEvaluation(value.equals("vector") ? TSP_GA.VECTOR_EVALUATION
+                    : value.equals("scalar") ? TSP_GA.SCALAR_EVALUATION : -1);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+    }
+
+    /**
+     * Sets the operators by their TSP_GA constants, as TSP_GA.setOperators().
+     * Unknown values fall back to tournament, cycle and inversion.
+     * @param selection TOURNAMENT_SELECT or ROULETTE_SELECT.
+     * @param crossover CYCLE_CROSSOVER or PM_CROSSOVER.
+     * @param mutation INVERSION_MUTATION or EXCHANGE_MUTATION.
+     */
+    public void setOperators(int selection, int crossover, int mutation) {
+        this.selection = selection == TSP_GA.ROULETTE_SELECT
+            ? SelectionOperator.ROULETTE : SelectionOperator.TOURNAMENT;
+        this.crossover = crossover == TSP_GA.PM_CROSSOVER
+            ? CrossoverOperator.PMX : CrossoverOperator.CYCLE;
+        this.mutation = mutation == TSP_GA.EXCHANGE_MUTATION
+            ? MutationOperator.EXCHANGE : MutationOperator.INVERSION;
+    }
+
+    /**
+     * @param populationSize The number of individuals, at least 2.
+     */
+    public void setPopulationSize(int populationSize) {
+        check(populationSize >= 2, "population", populationSize);
+        this.populationSize = populationSize;
+    }
+
+    /**
+     * @param generations The number of generations of a run, at least 1.
+     */
+    public void setGenerations(int generations) {
+        check(generations >= 1, "generations", generations);
+        this.generations = generations;
+    }
+
+    /**
+     * @param tournamentSize The individuals drawn per tournament, at least 1.
+     */
+    public void setTournamentSize(int tournamentSize) {
+        check(tournamentSize >= 1, "tournament", tournamentSize);
+        this.tournamentSize = tournamentSize;
+    }
+
+    /**
+     * @param mutationChance The percentage chance of mutation over crossover.
+     */
+    public void setMutationChance(int mutationChance) {
+        check(mutationChance >= 0 && mutationChance <= 100, "mutationChance", mutationChance);
+        this.mutationChance = mutationChance;
+    }
+
+    /**
+     * @param selection The selection operator.
+     */
+    public void setSelection(SelectionOperator selection) {
+        if(selection == null) {
+            throw new IllegalArgumentException("Invalid selection");
+        }
+        this.selection = selection;
+    }
+
+    /**
+     * @param crossover The crossover operator.
+     */
+    public void setCrossover(CrossoverOperator crossover) {
+        if(crossover == null) {
+            throw new IllegalArgumentException("Invalid crossover");
+        }
+        this.crossover = crossover;
+    }
+
+    /**
+     * @param mutation The mutation operator.
+     */
+    public void setMutation(MutationOperator mutation) {
+        if(mutation == null) {
+            throw new IllegalArgumentException("Invalid mutation");
+        }
+        this.mutation = mutation;
+    }
+
+    /**
+     * @param mode NO_LOCAL_SEARCH, LOCAL_SEARCH_OFFSPRING or LOCAL_SEARCH_ELITE.
+     * @param budget The time local search may take each generation, in
+     *               microseconds, 0 for no limit.
+     */
+    public void setLocalSearch(int mode, int budget) {
+        setLocalSearch(mode, budget, localSearchEffort);
+    }
+
+    /**
+     * Sets the local search stage with a limit on its effort as well as its
+     * time. Local search stops each generation at whichever limit comes first.
+     * The effort limit stops it at the same point whatever the speed of the
+     * machine, so a run with only an effort limit (budget 0) is reproducible
+     * from its seed.
+     * @param mode NO_LOCAL_SEARCH, LOCAL_SEARCH_OFFSPRING or LOCAL_SEARCH_ELITE.
+     * @param budget The time local search may take each generation, in
+     *               microseconds, 0 for no limit.
+     * @param effort The cities local search may look at each generation, each
+     *               trying its candidate moves, 0 for no limit.
+     */
+    public void setLocalSearch(int mode, int budget, int effort) {
+        check(mode >= TSP_GA.NO_LOCAL_SEARCH && mode <= TSP_GA.LOCAL_SEARCH_ELITE, "localSearch", mode);
+        check(budget >= 0, "localSearchBudget", budget);
+        check(effort >= 0, "localSearchEffort", effort);
+        localSearch = mode;
+        localSearchBudget = budget;
+        localSearchEffort = effort;
+    }
+
+    /**
+     * @param timeLimit The wall time a run may take in ms, 0 for no limit.
+     */
+    public void setTimeLimit(long timeLimit) {
+        if(timeLimit < 0) {
+            throw new IllegalArgumentException("Invalid timeLimit: "+timeLimit);
+        }
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @param target Stop a run at this fitness or better, Integer.MIN_VALUE for
+     *               no target.
+     */
+    public void setTarget(int target) {
+        this.target = target;
+    }
+
+    /**
+     * @param stagnationLimit Generations without a better best route before a
+     *                        run has converged, 0 for no limit.
+     */
+    public void setStagnationLimit(int stagnationLimit) {
+        check(stagnationLimit >= 0, "stagnation", stagnationLimit);
+        this.stagnationLimit = stagnationLimit;
+    }
+
+    /**
+     * @param diversityFloor Diversity below which a run has converged, 0 for
+     *                       none.
+     */
+    public void setDiversityFloor(double diversityFloor) {
+        if(!(diversityFloor >= 0 && diversityFloor <= 1)) {
+            throw new IllegalArgumentException("Invalid diversityFloor: "+diversityFloor);
+        }
+        this.diversityFloor = diversityFloor;
+    }
+
+    /**
+     * @param restartElites The best individuals kept when a converged run
+     *                      restarts, 0 to stop the run instead.
+     */
+    public void setRestartElites(int restartElites) {
+        check(restartElites >= 0, "restartElites", restartElites);
+        this.restartElites = restartElites;
+    }
+
+    /**
+     * @param duplicates NO_TOUR_HASH, REUSE_DUPLICATES to reuse the fitness of
+     *                   tours already seen, or REJECT_DUPLICATES to also breed
+     *                   again children already in the new generation (see
+     *                   TSP_GA).
+     */
+    public void setDuplicates(int duplicates) {
+        check(duplicates >= TSP_GA.NO_TOUR_HASH && duplicates <= TSP_GA.REJECT_DUPLICATES, "duplicates", duplicates);
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * @param evaluation SCALAR_EVALUATION, or VECTOR_EVALUATION to sum edge
+     *                   costs with the Vector API where it is available (see
+     *                   TourEvaluator).
+     */
+    public void setEvaluation(int evaluation) {
+        check(evaluation == TSP_GA.SCALAR_EVALUATION || evaluation == TSP_GA.VECTOR_EVALUATION, "evaluation", evaluation);
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * Sets the share of the first population built by a seeding heuristic. The
+     * shares of every heuristic add up to at most 100, the rest are random.
+     * @param method A Seeding method, e.g. Seeding.NEAREST_NEIGHBOUR.
+     * @param percentage The percentage of the population.
+     */
+    public void setSeeding(int method, int percentage) {
+        if(method < 0 || method >= Seeding.METHODS) {
+            throw new IllegalArgumentException("Invalid seeding method: "+method);
+        }
+        int total = percentage;
+        for(int m = 0; m < Seeding.METHODS; m++) {
+            total += m == method ? 0 : seeding[m];
+        }
+        check(percentage >= 0 && total <= 100, "seeding", percentage);
+        seeding[method] = percentage;
+    }
+
+    public int populationSize() {
+        return populationSize;
+    }
+
+    public int generations() {
+        return generations;
+    }
+
+    public int tournamentSize() {
+        return tournamentSize;
+    }
+
+    public int mutationChance() {
+        return mutationChance;
+    }
+
+    public SelectionOperator selection() {
+        return selection;
+    }
+
+    public CrossoverOperator crossover() {
+        return crossover;
+    }
+
+    public MutationOperator mutation() {
+        return mutation;
+    }
+
+    public int localSearch() {
+        return localSearch;
+    }
+
+    public int localSearchBudget() {
+        return localSearchBudget;
+    }
+
+    public int localSearchEffort() {
+        return localSearchEffort;
+    }
+
+    public long timeLimit() {
+        return timeLimit;
+    }
+
+    public int target() {
+        return target;
+    }
+
+    public int stagnationLimit() {
+        return stagnationLimit;
+    }
+
+    public double diversityFloor() {
+        return diversityFloor;
+    }
+
+    public int restartElites() {
+        return restartElites;
+    }
+
+    public int duplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @param method A Seeding method.
+     * @return The percentage of the first population it builds.
+     */
+    public int seeding(int method) {
+        return seeding[method];
+    }
+
+    public int evaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Reads a config in the form given by toString().
+     * @param settings Settings as name=value, separated by spaces. Settings
+     *                 left out keep their defaults.
+     * @return The config.
+     * @throws IllegalArgumentException If a setting or value is not valid.
+     */
+    public static GAConfig parse(String settings) {
+        GAConfig config = new GAConfig();
+        for(String setting : settings.trim().split("\\s+")) {
+            int split = setting.indexOf('=');
+            if(split < 0) {
+                throw new IllegalArgumentException("Invalid setting: "+setting);
+            }
+            config.set(setting.substring(0, split), setting.substring(split+1));
+        }
+        return config;
+    }
+
+    /**
+     * @return Every setting as name=value, separated by spaces.
+     */
+    public String toString() {
+        String[] modes = {"none", "offspring", "elite"};
+        return "population="+populationSize+" generations="+generations
+            +" tournament="+tournamentSize+" mutationChance="+mutationChance
+            +" selection="+nameOf(SELECTIONS, selection)
+            +" crossover="+nameOf(CROSSOVERS, crossover)
+            +" mutation="+nameOf(MUTATIONS, mutation)
+            +" localSearch="+modes[localSearch]+" localSearchBudget="+localSearchBudget
+            +" localSearchEffort="+localSearchEffort
+            +" timeLimit="+timeLimit+" target="+(target == Integer.MIN_VALUE ? "none" : Integer.toString(target))
+            +" stagnation="+stagnationLimit+" diversityFloor="+diversityFloor+" restartElites="+restartElites
+            +" duplicates="+new String[] {"off", "reuse", "reject"}[duplicates]
+            +" nearestNeighbour="+seeding[Seeding.NEAREST_NEIGHBOUR]+" greedyEdge="+seeding[Seeding.GREEDY_EDGE]
+            +" spaceFillingCurve="+seeding[Seeding.SPACE_FILLING_CURVE]
+            +" randomInsertion="+seeding[Seeding.RANDOM_INSERTION]
+            +" evaluation="+(evaluation == TSP_GA.VECTOR_EVALUATION ? "vector" : "scalar");
+    }
+
+    /**
+     * @return True if every operator is built in or registered, so parse()
+     *         of toString() gives back this config. Checkpoints need this.
+     */
+    public boolean restorable() {
+        return named(SELECTIONS, selection) != null && named(CROSSOVERS, crossover) != null
+            && named(MUTATIONS, mutation) != null;
+    }
+
+    /**
+     * Names a custom selection operator, so set() and parse() accept it.
+     * @param name The name, without spaces or '='.
+     * @param selection The operator.
+     * @throws IllegalArgumentException If the name is not valid or is taken by
+     *                                  another operator.
+     */
+    public static void registerSelection(String name, SelectionOperator selection) {
+        register(SELECTIONS, name, selection);
+    }
+
+    /**
+     * Names a custom crossover operator, so set() and parse() accept it.
+     * @param name The name, without spaces or '='.
+     * @param crossover The operator.
+     * @throws IllegalArgumentException If the name is not valid or is taken by
+     *                                  another operator.
+     */
+    public static void registerCrossover(String name, CrossoverOperator crossover) {
+        register(CROSSOVERS, name, crossover);
+    }
+
+    /**
+     * Names a custom mutation operator, so set() and parse() accept it.
+     * @param name The name, without spaces or '='.
+     * @param mutation The operator.
+     * @throws IllegalArgumentException If the name is not valid or is taken by
+     *                                  another operator.
+     */
+    public static void registerMutation(String name, MutationOperator mutation) {
+        register(MUTATIONS, name, mutation);
+    }
+
+    /**
+     * Adds an operator to a registry.
+     */
+    private static synchronized <T> void register(Map<String, T> operators, String name, T operator) {
+        if(name == null || !name.matches("[^\\s=]+") || operator == null) {
+            throw new IllegalArgumentException("Invalid operator name: "+name);
+        }
+        T known = operators.get(name);
+        if(known != null && known != operator) {
+            throw new IllegalArgumentException("Operator name already registered: "+name);
+        }
+        operators.put(name, operator);
+    }
+
+    /**
+     * @return The operator registered under a name.
+     * @throws IllegalArgumentException If there is none.
+     */
+    private static synchronized <T> T operator(Map<String, T> operators, String setting, String name) {
+        T operator = operators.get(name);
+        if(operator == null) {
+            throw new IllegalArgumentException("Invalid "+setting+": "+name);
+        }
+        return operator;
+    }
+
+    /**
+     * @return The name an operator is registered under, or null if it is not.
+     */
+    private static synchronized String named(Map<String, ?> operators, Object operator) {
+        for(Map.Entry<String, ?> entry : operators.entrySet()) {
+            if(entry.getValue() == operator) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The name of a built in or registered operator, or the class name
+     *         of any other, which parse() does not accept.
+     */
+    private static String nameOf(Map<String, ?> operators, Object operator) {
+        String name = named(operators, operator);
+        return name != null ? name : operator.getClass().getSimpleName();
+    }
+
+    /**
+     * @return A setting parsed as a whole number.
+     */
+    private static int parse(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid "+name+": "+value, e);
+        }
+    }
+
+    /**
+     * Throws if a setting is out of range.
+     */
+    private static void check(boolean valid, String name, int value) {
+        if(!valid) {
+            throw new IllegalArgumentException("Invalid "+name+": "+value);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per generation metrics of a GA run: generation and evaluation rates, time in
+ * selection, variation and evaluation, best, mean and worst fitness, diversity
+ * stagnation and unique tours.
+ * Each generation is written into preallocated ring buffers holding the most
+ * recent generations, so recording allocates nothing. The buffers can be read
+ * through JMX (see register() and GAMetricsMBean) and every generation can be
+ * streamed to a CSV or JSON lines file (see setSink()).
+ * Diversity is as TSP_GA.diversity().
+ * A TSP_GA only times and records generations when it has a GAMetrics, see
+ * TSP_GA.setMetrics(), so metrics cost one null check per child when off.
+ * One GAMetrics per GA; JMX reads race with the GA thread, so a value may be
+ * a generation behind.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class GAMetrics implements GAMetricsMBean
+{
+    // ########## CONSTANTS ##########
+    private static final int CAPACITY = 1024; // Default generations held
+
+    // ########## VARIABLES ##########
+    private final int mask; // Capacity-1, the capacity is a power of 2
+    // Ring buffers, one entry per generation
+    private final long[] times; // Time at the end of the generation, in ns
+    private final int[] best;
+    private final double[] mean;
+    private final int[] worst;
+    private final double[] diversity;
+    private final int[] stagnation;
+    private final long[] selectionTimes; // In ns
+    private final long[] variationTimes;
+    private final long[] evaluationTimes;
+    private final int[] evaluations;
+    private final int[] unique; // Unique tours, 0 when tours are not hashed
+    private volatile long count; // Generations recorded this run, written last
+    private long start; // Start of the run, in ns
+    private long selectionTotal, variationTotal, evaluationTotal; // This run, in ns
+    private int bestSoFar; // Best fitness this run
+    private int stagnant; // Generations since bestSoFar improved
+    private Writer sink; // Stream of every generation, or null
+    private boolean json; // JSON lines rather than CSV
+    private final StringBuilder line = new StringBuilder(); // Reused sink line
+    private char[] chars = new char[256]; // The line copied for the writer
+    private ObjectName name; // JMX name, or null if not registered
+
+    /**
+     * Creates metrics holding the last 1024 generations.
+     */
+    public GAMetrics() {
+        this(CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of recent generations held, rounded up to a
+     *                 power of 2.
+     */
+    public GAMetrics(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity-1))*2;
+        mask = size-1;
+        times = new long[size];
+        best = new int[size];
+        mean = new double[size];
+        worst = new int[size];
+        diversity = new double[size];
+        stagnation = new int[size];
+        selectionTimes = new long[size];
+        variationTimes = new long[size];
+        evaluationTimes = new long[size];
+        evaluations = new int[size];
+        unique = new int[size];
+        reset();
+    }
+
+    /**
+     * Starts a new run, forgetting the generations held.
+     */
+    public void reset() {
+        count = 0;
+        start = System.nanoTime();
+        selectionTotal = 0;
+        variationTotal = 0;
+        evaluationTotal = 0;
+        bestSoFar = Integer.MAX_VALUE;
+        stagnant = 0;
+    }
+
+    /**
+     * Records a generation that has just been made.
+     * @param ga The GA, whose population is the new generation.
+     * @param selectionTime Time spent selecting parents, in ns.
+     * @param variationTime Time spent in crossover and mutation, in ns.
+     * @param evaluationTime Time spent evaluating children in full, in ns.
+     * @param evaluated The number of children scored, in full or by delta.
+     * @param uniqueTours The number of unique tours in the new generation, 0 if
+     *                    tours are not hashed.
+     */
+    void record(TSP_GA ga, long selectionTime, long variationTime, long evaluationTime, int evaluated, int uniqueTours) {
+        long generation = count;
+        int slot = (int)(generation & mask);
+        int populationSize = ga.populationSize();
+        int bestIndex = 0, worstIndex = 0;
+        long total = 0;
+        for(int i = 0; i < populationSize; i++) {
+            int fitness = ga.fitness(i);
+            total += fitness;
+            if(fitness < ga.fitness(bestIndex)) {
+                bestIndex = i;
+            }
+            if(fitness > ga.fitness(worstIndex)) {
+                worstIndex = i;
+            }
+        }
+        int bestFitness = ga.fitness(bestIndex);
+        if(bestFitness < bestSoFar) {
+            bestSoFar = bestFitness;
+            stagnant = 0;
+        } else {
+            stagnant++;
+        }
+        selectionTotal += selectionTime;
+        variationTotal += variationTime;
+        evaluationTotal += evaluationTime;
+        times[slot] = System.nanoTime();
+        best[slot] = bestFitness;
+        mean[slot] = (double)total/populationSize;
+        worst[slot] = ga.fitness(worstIndex);
+        diversity[slot] = ga.diversity();
+        stagnation[slot] = stagnant;
+        selectionTimes[slot] = selectionTime;
+        variationTimes[slot] = variationTime;
+        evaluationTimes[slot] = evaluationTime;
+        evaluations[slot] = evaluated;
+        unique[slot] = uniqueTours;
+        count = generation+1; // Publish the entry
+        if(sink != null) {
+            write(generation, slot);
+        }
+    }
+
+    /**
+     * Streams every generation from now on to a file, as JSON lines if the name
+     * ends in .jsonl or .json, otherwise as CSV.
+     * @param filename The file to write, replacing any old one.
+     */
+    public void setSink(String filename) {
+        try {
+            if(sink != null) {
+                sink.close();
+                sink = null;
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not close metrics file", e);
+        }
+        json = filename.endsWith(".jsonl") || filename.endsWith(".json");
+        try {
+            sink = new BufferedWriter(new FileWriter(filename), 1 << 16);
+            if(!json) {
+                sink.write("generation,time_ms,best,mean,worst,diversity,stagnation,"
+                    +"selection_ns,variation_ns,evaluation_ns,evaluations,unique\n");
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not open metrics file: " + filename, e);
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, as
+     * TSP_GA:type=GAMetrics,name=name.
+     * @param name A name unique among the registered metrics.
+     */
+    public void register(String name) {
+        try {
+            this.name = new ObjectName("TSP_GA:type=GAMetrics,name="+ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+        }
+        catch (JMException e) {
+            throw new RuntimeException("Could not register metrics: " + name, e);
+        }
+    }
+
+    /**
+     * Flushes and closes the sink and unregisters from JMX, if either is in use.
+     */
+    public void close() {
+        try {
+            if(sink != null) {
+                sink.close();
+            }
+            if(name != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        }
+        catch (IOException | JMException e) {
+            throw new RuntimeException("Could not close metrics", e);
+        }
+        finally {
+            sink = null;
+            name = null;
+        }
+    }
+
+    public long getGenerations() {
+        return count;
+    }
+
+    public double getGenerationsPerSecond() {
+        long last = count, held = Math.min(last, mask+1);
+        if(held < 2) {
+            return 0;
+        }
+        long time = times[(int)((last-1) & mask)]-times[(int)((last-held) & mask)];
+        return time <= 0 ? 0 : (held-1)*1e9/time;
+    }
+
+    public double getEvaluationsPerSecond() {
+        long last = count, held = Math.min(last, mask+1);
+        if(held < 2) {
+            return 0;
+        }
+        long evaluated = 0;
+        for(long g = last-held+1; g < last; g++) {
+            evaluated += evaluations[(int)(g & mask)];
+        }
+        long time = times[(int)((last-1) & mask)]-times[(int)((last-held) & mask)];
+        return time <= 0 ? 0 : evaluated*1e9/time;
+    }
+
+    public int getBestFitness() {
+        return count == 0 ? 0 : best[(int)((count-1) & mask)];
+    }
+
+    public double getMeanFitness() {
+        return count == 0 ? 0 : mean[(int)((count-1) & mask)];
+    }
+
+    public int getWorstFitness() {
+        return count == 0 ? 0 : worst[(int)((count-1) & mask)];
+    }
+
+    public double getDiversity() {
+        return count == 0 ? 0 : diversity[(int)((count-1) & mask)];
+    }
+
+    public int getStagnation() {
+        return count == 0 ? 0 : stagnation[(int)((count-1) & mask)];
+    }
+
+    public int getUniqueTours() {
+        return count == 0 ? 0 : unique[(int)((count-1) & mask)];
+    }
+
+    public double getSelectionMillis() {
+        return selectionTotal/1e6;
+    }
+
+    public double getVariationMillis() {
+        return variationTotal/1e6;
+    }
+
+    public double getEvaluationMillis() {
+        return evaluationTotal/1e6;
+    }
+
+    public int[] getRecentBest() {
+        long last = count;
+        int held = (int)Math.min(last, mask+1);
+        int[] recent = new int[held];
+        for(int i = 0; i < held; i++) {
+            recent[i] = best[(int)((last-held+i) & mask)];
+        }
+        return recent;
+    }
+
+    public double[] getRecentDiversity() {
+        long last = count;
+        int held = (int)Math.min(last, mask+1);
+        double[] recent = new double[held];
+        for(int i = 0; i < held; i++) {
+            recent[i] = diversity[(int)((last-held+i) & mask)];
+        }
+        return recent;
+    }
+
+    /**
+     * Writes one generation to the sink.
+     */
+    private void write(long generation, int slot) {
+        line.setLength(0);
+        double time = (times[slot]-start)/1e6;
+        if(json) {
+            line.append("{\"generation\":").append(generation)
+                .append(",\"timeMs\":").append(time)
+                .append(",\"best\":").append(best[slot])
+                .append(",\"mean\":").append(mean[slot])
+                .append(",\"worst\":").append(worst[slot])
+                .append(",\"diversity\":").append(diversity[slot])
+                .append(",\"stagnation\":").append(stagnation[slot])
+                .append(",\"selectionNs\":").append(selectionTimes[slot])
+                .append(",\"variationNs\":").append(variationTimes[slot])
+                .append(",\"evaluationNs\":").append(evaluationTimes[slot])
+                .append(",\"evaluations\":").append(evaluations[slot])
+                .append(",\"unique\":").append(unique[slot]).append("}\n");
+        } else {
+            line.append(generation).append(',').append(time)
+                .append(',').append(best[slot]).append(',').append(mean[slot])
+                .append(',').append(worst[slot]).append(',').append(diversity[slot])
+                .append(',').append(stagnation[slot]).append(',').append(selectionTimes[slot])
+                .append(',').append(variationTimes[slot]).append(',').append(evaluationTimes[slot])
+                .append(',').append(evaluations[slot]).append(',').append(unique[slot]).append('\n');
+        }
+        if(chars.length < line.length()) {
+            chars = new char[line.length()*2];
+        }
+        line.getChars(0, line.length(), chars, 0);
+        try {
+            sink.write(chars, 0, line.length()); // append() would copy it to a String
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not write metrics", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * The JMX view of GAMetrics. Values are of the run in progress, or the last
+ * run, and rates are over the generations still held in the ring buffers.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public interface GAMetricsMBean
+{
+    /**
+     * @return The number of generations recorded this run.
+     */
+    long getGenerations();
+
+    /**
+     * @return Generations per second over the recent generations.
+     */
+    double getGenerationsPerSecond();
+
+    /**
+     * @return Fitness evaluations, full or by delta, per second over the recent
+     *         generations.
+     */
+    double getEvaluationsPerSecond();
+
+    /**
+     * @return The best fitness of the last generation.
+     */
+    int getBestFitness();
+
+    /**
+     * @return The mean fitness of the last generation.
+     */
+    double getMeanFitness();
+
+    /**
+     * @return The worst fitness of the last generation.
+     */
+    int getWorstFitness();
+
+    /**
+     * @return The diversity of the last generation, see GAMetrics.
+     */
+    double getDiversity();
+
+    /**
+     * @return The number of generations since the best fitness improved.
+     */
+    int getStagnation();
+
+    /**
+     * @return The number of unique tours in the last generation, 0 if tours
+     *         are not hashed.
+     */
+    int getUniqueTours();
+
+    /**
+     * @return Time spent selecting parents this run, in ms.
+     */
+    double getSelectionMillis();
+
+    /**
+     * @return Time spent in crossover and mutation this run, in ms.
+     */
+    double getVariationMillis();
+
+    /**
+     * @return Time spent evaluating children in full this run, in ms.
+     */
+    double getEvaluationMillis();
+
+    /**
+     * @return The best fitness of the recent generations, oldest first.
+     */
+    int[] getRecentBest();
+
+    /**
+     * @return The diversity of the recent generations, oldest first.
+     */
+    double[] getRecentDiversity();
+}
@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The random generator of the GA: the SplitMix64 algorithm of
+ * java.util.SplittableRandom, giving the same numbers from the same seed, but
+ * with its state (seed and gamma) open so a run can be checkpointed and
+ * resumed exactly, see Checkpoint.
+ * Like SplittableRandom it is not thread safe; split() gives an independent
+ * generator for another thread.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class GARandom
+{
+    // ########## CONSTANTS ##########
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; // Gamma of seeded generators
+    private static final double DOUBLE_UNIT = 0x1.0p-53; // 1.0 / (1L << 53)
+    private static final AtomicLong SEEDER = new AtomicLong(
+        mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime())); // Seeds of unseeded generators
+
+    // ########## VARIABLES ##########
+    private long seed; // Advanced by gamma for each number
+    private final long gamma; // Odd step of the seed
+
+    /**
+     * Creates a generator with a seed unlikely to be used by any other.
+     */
+    public GARandom() {
+        long s = SEEDER.getAndAdd(2*GOLDEN_GAMMA);
+        seed = mix64(s);
+        gamma = mixGamma(s+GOLDEN_GAMMA);
+    }
+
+    /**
+     * @param seed The seed, giving the same numbers as new SplittableRandom(seed).
+     */
+    public GARandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Restores a generator from its state, see seed() and gamma().
+     * @param seed The seed.
+     * @param gamma The gamma, odd.
+     */
+    public GARandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return The current seed, part of the state.
+     */
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return The gamma, part of the state.
+     */
+    public long gamma() {
+        return gamma;
+    }
+
+    /**
+     * @return A new generator with its own stream, advancing this one.
+     */
+    public GARandom split() {
+        return new GARandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * @return A uniform random int.
+     */
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    /**
+     * @param bound The number of values, at least 1.
+     * @return A uniform random int from 0 to bound-1.
+     */
+    public int nextInt(int bound) {
+        if(bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = mix32(nextSeed());
+        int m = bound-1;
+        if((bound & m) == 0) { // A power of 2
+            return r & m;
+        }
+        // Reject the top values that would bias the remainder
+        for(int u = r >>> 1; u+m-(r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+        }
+        return r;
+    }
+
+    /**
+     * @return A uniform random long.
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * @return A uniform random double from 0 (inclusive) to 1 (exclusive).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11)*DOUBLE_UNIT;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27))*0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33))*0x62a9d9ed799705f5L;
+        return (int)(((z ^ (z >>> 28))*0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    /**
+     * @return An odd gamma with enough bit changes to give a good stream.
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33))*0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33))*0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return n < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
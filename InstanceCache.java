@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache of read TSPs, shared by the jobs of a SolveService, so a TSP solved
+ * again, under any file name, is not parsed again.
+ * Each TSP is held as a prototype TSP_GA, which jobs copy with
+ * TSP_GA.copy(), so what runs build for the TSP, such as the candidate lists
+ * of local search, is built by the first job that needs it and shared by the
+ * rest.
+ * TSPs are keyed by the SHA-256 of the file content. The digest of a file is
+ * remembered by its path, size and modification time, so an unchanged file is
+ * not hashed again either. The cache holds cost matrices up to a number of
+ * bytes (see CostMatrix.footprint(), the prototypes are not counted) and
+ * drops the least recently used TSPs over that, though the newest is always
+ * held. A job asking for a TSP that another is
+ * still reading waits for that read rather than reading it again.
+ * Safe to use from several threads at once.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class InstanceCache
+{
+    // ########## CONSTANTS ##########
+    private static final int DIGESTS = 4096; // Most file digests remembered
+    private static final int BUFFER_SIZE = 1 << 16; // Bytes hashed at a time
+
+    // ########## VARIABLES ##########
+    private final long capacity; // Most bytes of cost matrices held
+    private long used; // Bytes of cost matrices held
+    private long hits, misses;
+    // TSPs by content digest, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    // Content digest by path, size and modification time, least recently used first
+    private final LinkedHashMap<String, String> digests = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > DIGESTS;
+        }
+    };
+
+    /**
+     * A TSP held, or being read.
+     */
+    private static class Entry
+    {
+        private final CompletableFuture<TSP_GA> prototype = new CompletableFuture<TSP_GA>();
+        private long bytes; // Footprint of the matrix, 0 until read
+    }
+
+    /**
+     * @param capacity The most bytes of cost matrices to hold.
+     */
+    public InstanceCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets a TSP, reading it if it is not held.
+     * @param filename The TSPLIB file, or a file written by savePacked().
+     * @param timings Set to the time taken to hash the file, and to read it or
+     *                wait for it being read, 0 if it was held, in ns.
+     * @return The prototype of runs on the TSP, shared with every other user
+     *         of the TSP, to be copied rather than run, see TSP_GA.copy().
+     * @throws IOException If the file cannot be read.
+     */
+    public TSP_GA get(String filename, long[] timings) throws IOException {
+        long startTime = System.nanoTime();
+        String key = digest(filename);
+        long hashed = System.nanoTime();
+        Entry entry;
+        boolean reader;
+        synchronized(this) {
+            entry = entries.get(key);
+            reader = entry == null;
+            if(reader) {
+                entry = new Entry();
+                entries.put(key, entry);
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+        boolean held = !reader && entry.prototype.isDone();
+        if(reader) {
+            try {
+                CostMatrix matrix = TSP_GA.read(filename);
+                synchronized(this) {
+                    entry.bytes = matrix.footprint();
+                    used += entry.bytes;
+                    evict(entry);
+                }
+                entry.prototype.complete(new TSP_GA(matrix));
+            }
+            catch (IOException | RuntimeException e) {
+                synchronized(this) {
+                    entries.remove(key, entry); // Let a later job try again
+                }
+                entry.prototype.completeExceptionally(e);
+                throw e;
+            }
+        }
+        TSP_GA prototype;
+        try {
+            prototype = entry.prototype.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted reading: " + filename, e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Could not read file: " + filename, e.getCause());
+        }
+        timings[0] = hashed-startTime;
+        timings[1] = held ? 0 : System.nanoTime()-hashed;
+        return prototype;
+    }
+
+    /**
+     * Drops the least recently used TSPs until the cache is within its
+     * capacity, keeping one just read.
+     * @param newest The TSP just read.
+     */
+    private void evict(Entry newest) {
+        Iterator<Entry> oldest = entries.values().iterator();
+        while(used > capacity && oldest.hasNext()) {
+            Entry entry = oldest.next();
+            if(entry != newest && entry.bytes > 0) { // Not still being read
+                used -= entry.bytes;
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The SHA-256 of the content of a file, in hex.
+     */
+    private String digest(String filename) throws IOException {
+        Path path = Paths.get(filename).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String file = path+"|"+attributes.size()+"|"+attributes.lastModifiedTime();
+        synchronized(this) {
+            String digest = digests.get(file);
+            if(digest != null) {
+                return digest;
+            }
+        }
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(path)) {
+            for(int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                sha.update(buffer, 0, read);
+            }
+        }
+        StringBuilder digest = new StringBuilder(64);
+        for(byte b : sha.digest()) {
+            digest.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        synchronized(this) {
+            digests.put(file, digest.toString());
+        }
+        return digest.toString();
+    }
+
+    /**
+     * @return The number of TSPs held.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The bytes of cost matrices held.
+     */
+    public synchronized long used() {
+        return used;
+    }
+
+    /**
+     * @return The number of gets that found the TSP held or being read.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of gets that read the TSP.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+}
@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Island model GA: several populations of one TSP evolve side by side, each on
+ * its own thread and with its own operators. Every few generations each island
+ * sends a copy of its best route to another island (the next one in a ring, or
+ * a random one), which swaps it for its worst individual.
+ * Each island has a one slot inbox that is swapped atomically, a newer migrant
+ * overwriting one not yet taken, so an island never waits on another.
+ * Threaded runs depend on thread timing; the deterministic mode steps every
+ * island in turn on one thread and migrates at fixed points, for debugging.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class IslandModel
+{
+    // ########## CONSTANTS ##########
+    public static final int RING = 0; // Send to the next island
+    public static final int RANDOM = 1; // Send to a random other island
+    private static final int MIGRATION_INTERVAL = 50; // Generations between migrations
+
+    // ########## VARIABLES ##########
+    private final TSP_GA[] islands; // The island populations
+    private final AtomicReferenceArray<Migrant> inboxes; // Latest migrant for each island
+    private int topology = RING; // How migrants are sent
+    private int interval = MIGRATION_INTERVAL; // Generations between migrations
+    // Result of the last run
+    private volatile int winner; // The first island to reach the goal, -1 if none
+    private int generations; // Generations run by the winner
+    private long time; // Time to reach the goal, or of the whole run, in ms
+    private int bestFitness; // Best fitness over all islands
+    private int[] bestRoute; // Best route over all islands
+
+    /**
+     * A route sent between islands.
+     */
+    private static class Migrant
+    {
+        private final int[] route;
+        private final int fitness;
+
+        private Migrant(int[] route, int fitness) {
+            this.route = route;
+            this.fitness = fitness;
+        }
+    }
+
+    /**
+     * @param source The GA whose TSP and operators the islands start with.
+     * @param islands The number of islands.
+     */
+    public IslandModel(TSP_GA source, int islands) {
+        this.islands = new TSP_GA[islands];
+        for(int i = 0; i < islands; i++) {
+            this.islands[i] = new TSP_GA(source);
+        }
+        inboxes = new AtomicReferenceArray<Migrant>(islands);
+        bestRoute = new int[source.size()];
+    }
+
+    /**
+     * Sets the operators of one island, see TSP_GA.setOperators().
+     * @param island The island.
+     * @param selection TOURNAMENT_SELECT or ROULETTE_SELECT.
+     * @param crossover CYCLE_CROSSOVER or PM_CROSSOVER.
+     * @param mutation INVERSION_MUTATION or EXCHANGE_MUTATION.
+     */
+    public void setOperators(int island, int selection, int crossover, int mutation) {
+        islands[island].setOperators(selection, crossover, mutation);
+    }
+
+    /**
+     * Sets all the settings of one island, see TSP_GA.setConfig().
+     * The islands must share the number of generations.
+     * @param island The island.
+     * @param config The settings to use.
+     */
+    public void setConfig(int island, GAConfig config) {
+        islands[island].setConfig(config);
+    }
+
+    /**
+     * @param topology RING or RANDOM.
+     * @param interval The number of generations between migrations.
+     */
+    public void setMigration(int topology, int interval) {
+        this.topology = topology;
+        this.interval = interval;
+    }
+
+    /**
+     * Runs the islands until one reaches the goal, or better, or each has run for
+     * its generations, and prints the result.
+     * @param goal The value to run until.
+     * @param seed The master seed, each island gets a generator split from it.
+     * @param deterministic Step the islands in turn on this thread.
+     * @return The time taken to reach the goal in ms, or -1 if not reached.
+     */
+    public long run(int goal, long seed, boolean deterministic) {
+        System.out.println("RUNNING "+islands.length+" ISLANDS UNTIL "+goal
+            +(deterministic ? " (DETERMINISTIC, SEED " : " (SEED ")+seed+")");
+        boolean reached = evolve(goal, seed, deterministic);
+        if(reached) {
+            System.out.println("Found value ("+goal+") on island "+winner+" after "+generations+" generations");
+        } else {
+            System.out.println("Goal ("+goal+") not found in "+islands[0].generations()+" generations");
+        }
+        System.out.println("Best result: "+bestFitness);
+        System.out.println("Execution time:"+time+"ms");
+        System.out.println(islands[0].printRoute(bestRoute));
+        return reached ? time : -1;
+    }
+
+    /**
+     * Prints the time to reach a goal against the number of islands, doubling the
+     * islands from 1 up to a maximum.
+     * @param source The GA whose TSP and operators the islands use.
+     * @param goal The value to run until.
+     * @param maxIslands The largest number of islands.
+     * @param repeats The number of runs for each number of islands.
+     * @param seed The master seed, run r of each size uses seed+r.
+     */
+    public static void scaling(TSP_GA source, int goal, int maxIslands, int repeats, long seed) {
+        System.out.println("ISLAND SCALING UNTIL "+goal+" ("+repeats+" RUNS EACH)");
+        System.out.println("islands:reached:mean ms:median ms");
+        for(int count = 1; count <= maxIslands; count *= 2) {
+            IslandModel model = new IslandModel(source, count);
+            long[] times = new long[repeats];
+            int reached = 0;
+            for(int r = 0; r < repeats; r++) {
+                // Runs that miss the goal count as the time they took
+                reached += model.evolve(goal, seed+r, false) ? 1 : 0;
+                times[r] = model.time;
+            }
+            Arrays.sort(times);
+            long total = 0;
+            for(long t : times) {
+                total += t;
+            }
+            System.out.println(count+":"+reached+"/"+repeats+":"+(total/repeats)+":"+times[(repeats-1)/2]);
+        }
+    }
+
+    /**
+     * Runs the islands and records the result.
+     * @return True if the goal was reached.
+     */
+    private boolean evolve(int goal, long seed, boolean deterministic) {
+        GARandom master = new GARandom(seed);
+        for(int i = 0; i < islands.length; i++) {
+            islands[i].reseed(master.split());
+            inboxes.set(i, null);
+        }
+        winner = -1;
+        long startTime = System.currentTimeMillis();
+        if(deterministic) {
+            evolveInTurn(goal, startTime);
+        } else {
+            evolveThreaded(goal, startTime);
+        }
+        if(winner == -1) {
+            time = System.currentTimeMillis()-startTime;
+        }
+        bestFitness = Integer.MAX_VALUE;
+        for(TSP_GA island : islands) {
+            if(island.bestFitness() < bestFitness) {
+                bestFitness = island.bestFitness();
+                island.copyBest(bestRoute);
+            }
+        }
+        return winner != -1;
+    }
+
+    /**
+     * Runs every island on its own thread.
+     */
+    private void evolveThreaded(int goal, long startTime) {
+        AtomicBoolean done = new AtomicBoolean();
+        Thread[] threads = new Thread[islands.length];
+        for(int i = 0; i < islands.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                TSP_GA island = islands[index];
+                island.start();
+                for(int g = 1; g <= island.generations() && !done.get(); g++) {
+                    island.step();
+                    if(g % interval == 0) {
+                        emigrate(index);
+                        immigrate(index);
+                    }
+                    if(island.bestFitness() <= goal) {
+                        if(done.compareAndSet(false, true)) {
+                            generations = g;
+                            time = System.currentTimeMillis()-startTime;
+                            winner = index; // Written last, read after join()
+                        }
+                        break;
+                    }
+                }
+            }, "island-"+i);
+            threads[i].start();
+        }
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                done.set(true); // Stop the islands, then keep waiting for them
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs the islands one generation at a time in order on this thread, all
+     * migrants being sent before any are taken, so runs repeat exactly.
+     */
+    private void evolveInTurn(int goal, long startTime) {
+        for(TSP_GA island : islands) {
+            island.start();
+        }
+        for(int g = 1; g <= islands[0].generations(); g++) {
+            for(TSP_GA island : islands) {
+                island.step();
+            }
+            if(g % interval == 0) {
+                for(int i = 0; i < islands.length; i++) {
+                    emigrate(i);
+                }
+                for(int i = 0; i < islands.length; i++) {
+                    immigrate(i);
+                }
+            }
+            for(int i = 0; i < islands.length; i++) {
+                if(islands[i].bestFitness() <= goal) {
+                    winner = i;
+                    generations = g;
+                    time = System.currentTimeMillis()-startTime;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a copy of the best route of an island to another island.
+     * @param island The sending island.
+     */
+    private void emigrate(int island) {
+        if(islands.length < 2) {
+            return;
+        }
+        int target;
+        if(topology == RANDOM) {
+            target = islands[island].random().nextInt(islands.length-1);
+            if(target >= island) {
+                target++; // Skip the sender
+            }
+        } else {
+            target = (island+1) % islands.length;
+        }
+        int[] route = new int[bestRoute.length];
+        islands[island].copyBest(route);
+        inboxes.set(target, new Migrant(route, islands[island].bestFitness()));
+    }
+
+    /**
+     * Takes the waiting migrant of an island, if there is one.
+     * @param island The receiving island.
+     */
+    private void immigrate(int island) {
+        Migrant migrant = inboxes.getAndSet(island, null);
+        if(migrant != null) {
+            islands[island].immigrate(migrant.route, migrant.fitness);
+        }
+    }
+}
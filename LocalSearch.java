@@ -0,0 +1,347 @@
+/**
+ * Local improvement of routes by 2-opt and Or-opt moves, for the memetic stage
+ * of the GA.
+ * Moves are only tried between a city and its nearest neighbours (candidate
+ * lists), and a city is only looked at again once an edge next to it changes
+ * (don't look bits), so a pass over a nearly optimal route is close to linear.
+ * Moves are scored from the cost of the edges they remove and add, and only
+ * made if they shorten the route. A 2-opt move reverses the shorter side of
+ * the route, so takes at most SIZE/2 swaps, and the route is rotated back to
+ * start with city 0 once it is improved.
+ * On an asymmetric TSP only moves that keep the direction of every edge are
+ * scored from their end edges, so 2-opt and reversed Or-opt moves are not
+ * tried. One LocalSearch per thread, the candidate lists can be shared.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class LocalSearch
+{
+    // ########## CONSTANTS ##########
+    private static final int MAX_SEGMENT = 3; // Longest segment moved by Or-opt
+    private static final int CHECK_EVERY = 16; // Cities looked at between deadline checks
+
+    // ########## VARIABLES ##########
+    private final CostMatrix cost; // The TSP costs
+    private final int[][] neighbours; // The nearest cities of each city, nearest first
+    private final int size; // The number of cities
+    private final boolean symmetric; // Whether reversing a path keeps its cost
+    private int[] tour; // The route being improved
+    private final int[] position; // The position of each city in the route
+    private final int[] queue; // Cities to look at, a circular queue
+    private final boolean[] queued; // Whether each city is in the queue (don't look bit off)
+    private int head, count; // Start and length of the queue
+    private int looked; // Cities looked at by the last improve()
+    private final int[] segment = new int[MAX_SEGMENT]; // Or-opt scratch space
+    private final int[] rotated; // Scratch space to put city 0 first again
+
+    /**
+     * @param cost The TSP costs.
+     * @param neighbours The candidate lists, see nearestNeighbours().
+     */
+    public LocalSearch(CostMatrix cost, int[][] neighbours) {
+        this.cost = cost;
+        this.neighbours = neighbours;
+        size = cost.size();
+        symmetric = cost.symmetric();
+        position = new int[size];
+        queue = new int[size];
+        queued = new boolean[size];
+        rotated = new int[size];
+    }
+
+    /**
+     * Builds the candidate lists: the k cheapest other cities of each city,
+     * to go to from it. Runs in O(SIZE^2 k), or for a sparse TSP over its
+     * edges only, in O(edges k), where a city with fewer than k edges lists
+     * fewer cities.
+     * @param cost The TSP costs.
+     * @param k The number of neighbours of each city.
+     * @return The neighbours of each city, cheapest first.
+     */
+    public static int[][] nearestNeighbours(CostMatrix cost, int k) {
+        int size = cost.size();
+        k = Math.min(k, size-1);
+        if(cost instanceof SparseCostMatrix) {
+            int[][] neighbours = new int[size][];
+            for(int city = 0; city < size; city++) {
+                neighbours[city] = ((SparseCostMatrix)cost).neighbours(city, k);
+            }
+            return neighbours;
+        }
+        int[][] neighbours = new int[size][k];
+        int[] costs = new int[k];
+        for(int city = 0; city < size; city++) {
+            int[] list = neighbours[city];
+            int found = 0;
+            for(int other = 0; other < size; other++) {
+                if(other == city) {
+                    continue;
+                }
+                int c = cost.cost(city, other);
+                if(found == k && c >= costs[k-1]) {
+                    continue; // Not among the nearest so far
+                }
+                // Insertion sort into the list
+                int i = found == k ? k-1 : found++;
+                while(i > 0 && costs[i-1] > c) {
+                    costs[i] = costs[i-1];
+                    list[i] = list[i-1];
+                    i--;
+                }
+                costs[i] = c;
+                list[i] = other;
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Improves a route in place until no candidate move shortens it, the
+     * deadline passes or it has looked at effort cities. The effort limit
+     * stops a search at the same point on every run, the deadline does not.
+     * @param route The route to improve, starting with city 0.
+     * @param deadline The System.nanoTime() to stop by, Long.MAX_VALUE for none.
+     * @param effort The most cities to look at, each trying its candidate moves.
+     * @return The reduction in cost of the route.
+     */
+    public int improve(int[] route, long deadline, int effort) {
+        tour = route;
+        head = 0;
+        count = 0;
+        for(int i = 0; i < size; i++) {
+            position[tour[i]] = i;
+            queued[tour[i]] = false;
+        }
+        for(int i = 0; i < size; i++) {
+            push(tour[i]);
+        }
+        int gain = 0;
+        looked = 0;
+        while(count > 0 && looked < effort) {
+            if(++looked % CHECK_EVERY == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            int city = pop();
+            int improvement = twoOpt(city);
+            if(improvement == 0) {
+                improvement = orOpt(city);
+            }
+            if(improvement > 0) {
+                gain += improvement;
+                push(city); // Look again from its new edges
+            }
+        }
+        rotate();
+        return gain;
+    }
+
+    /**
+     * @return The cities looked at by the last call of improve().
+     */
+    public int looked() {
+        return looked;
+    }
+
+    /**
+     * Rotates the route so that it starts with city 0 again, in O(SIZE).
+     */
+    private void rotate() {
+        int start = position[0];
+        if(start > 0) {
+            System.arraycopy(tour, start, rotated, 0, size-start);
+            System.arraycopy(tour, 0, rotated, size-start, start);
+            System.arraycopy(rotated, 0, tour, 0, size);
+        }
+    }
+
+    /**
+     * Tries 2-opt moves that join a city to one of its neighbours.
+     * @param a The city.
+     * @return The gain of the move made, or 0 if none was found.
+     */
+    private int twoOpt(int a) {
+        if(!symmetric) {
+            return 0; // The reversed path would change cost
+        }
+        for(int direction = 0; direction < 2; direction++) {
+            boolean forward = direction == 0;
+            int b = forward ? next(a) : previous(a); // The edge (a, b) is removed
+            int ab = cost.cost(a, b);
+            for(int c : neighbours[a]) {
+                int ac = cost.cost(a, c);
+                if(ac >= ab) {
+                    break; // Later neighbours are no nearer
+                }
+                int d = forward ? next(c) : previous(c); // The edge (c, d) is removed
+                if(c == b || d == a) {
+                    continue;
+                }
+                int delta = ac+cost.cost(b, d)-ab-cost.cost(c, d);
+                if(delta < 0) {
+                    // Forward: a b ... c d becomes a c ... b d
+                    // Backward: d c ... b a becomes d b ... c a
+                    if(forward) {
+                        reversePath(b, c);
+                    } else {
+                        reversePath(c, b);
+                    }
+                    push(b);
+                    push(c);
+                    push(d);
+                    return -delta;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Tries Or-opt moves of a segment starting at a city to next to one of the
+     * neighbours of that city, either way round if the TSP is symmetric.
+     * @param a The city.
+     * @return The gain of the move made, or 0 if none was found.
+     */
+    private int orOpt(int a) {
+        int start = position[a];
+        if(start == 0) {
+            return 0; // Segments do not wrap around the end of the array
+        }
+        for(int length = 1; length <= MAX_SEGMENT && start+length <= size; length++) {
+            int end = start+length-1;
+            int s1 = a, s2 = tour[end];
+            int before = tour[start-1], after = tour[(end+1) % size];
+            int removed = cost.cost(before, s1)+cost.cost(s2, after)-cost.cost(before, after);
+            for(int c : neighbours[a]) {
+                int p = position[c];
+                if(p >= start && p <= end) {
+                    continue; // Inside the segment
+                }
+                // Insert between c and its successor e, either way round
+                int e = tour[(p+1) % size];
+                if(e == s1) {
+                    continue; // Already there
+                }
+                int edge = cost.cost(c, e);
+                int reversed = symmetric ? cost.cost(c, s2)+cost.cost(s1, e)-edge : Integer.MAX_VALUE;
+                int kept = cost.cost(c, s1)+cost.cost(s2, e)-edge;
+                // Or between its predecessor f and c
+                int f = tour[(p+size-1) % size];
+                int edge2 = cost.cost(f, c);
+                int reversed2 = symmetric ? cost.cost(f, s2)+cost.cost(s1, c)-edge2 : Integer.MAX_VALUE;
+                int kept2 = cost.cost(f, s1)+cost.cost(s2, c)-edge2;
+                int best = Math.min(Math.min(reversed, kept), f == s2 ? Integer.MAX_VALUE : Math.min(reversed2, kept2));
+                if(best < removed) {
+                    boolean afterC = best == reversed || best == kept;
+                    boolean reverse = afterC ? best == reversed : best == reversed2;
+                    moveSegment(start, end, afterC ? p : (p+size-1) % size, reverse);
+                    push(before);
+                    push(after);
+                    push(c);
+                    push(afterC ? e : f);
+                    push(s2);
+                    return removed-best;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reverses the route from city from to city to, going forwards, or the
+     * rest of the route if that is shorter, which gives the same cycle. Either
+     * may wrap around the end of the array, so city 0 can leave position 0
+     * until improve() rotates the route back. Takes at most SIZE/2 swaps.
+     */
+    private void reversePath(int from, int to) {
+        int i = position[from], j = position[to];
+        int length = j-i+1;
+        if(length <= 0) {
+            length += size;
+        }
+        if(2*length > size) {
+            // Reverse the rest of the route instead
+            i = position[to]+1 == size ? 0 : position[to]+1;
+            j = position[from] == 0 ? size-1 : position[from]-1;
+            length = size-length;
+        }
+        for(int swaps = length/2; swaps > 0; swaps--) {
+            int city = tour[i];
+            tour[i] = tour[j];
+            tour[j] = city;
+            position[tour[i]] = i;
+            position[tour[j]] = j;
+            i = i+1 == size ? 0 : i+1;
+            j = j == 0 ? size-1 : j-1;
+        }
+    }
+
+    /**
+     * Moves the segment at positions start..end to just after position target.
+     * @param start The first position of the segment, > 0.
+     * @param end The last position of the segment.
+     * @param target The position to insert after, outside the segment.
+     * @param reverse Whether to reverse the segment.
+     */
+    private void moveSegment(int start, int end, int target, boolean reverse) {
+        int length = end-start+1;
+        System.arraycopy(tour, start, segment, 0, length);
+        int first; // Position the segment now starts at
+        if(target > end) {
+            for(int i = end+1; i <= target; i++) { // Shift the cities between left
+                tour[i-length] = tour[i];
+                position[tour[i-length]] = i-length;
+            }
+            first = target-length+1;
+        } else {
+            for(int i = start-1; i > target; i--) { // Shift the cities between right
+                tour[i+length] = tour[i];
+                position[tour[i+length]] = i+length;
+            }
+            first = target+1;
+        }
+        for(int i = 0; i < length; i++) {
+            int city = segment[reverse ? length-1-i : i];
+            tour[first+i] = city;
+            position[city] = first+i;
+        }
+    }
+
+    /**
+     * @return The city after a city in the route.
+     */
+    private int next(int city) {
+        int p = position[city]+1;
+        return tour[p == size ? 0 : p];
+    }
+
+    /**
+     * @return The city before a city in the route.
+     */
+    private int previous(int city) {
+        int p = position[city];
+        return tour[p == 0 ? size-1 : p-1];
+    }
+
+    /**
+     * Adds a city to the queue, if not already there.
+     */
+    private void push(int city) {
+        if(!queued[city]) {
+            queued[city] = true;
+            queue[(head+count) % size] = city;
+            count++;
+        }
+    }
+
+    /**
+     * @return The next city of the queue.
+     */
+    private int pop() {
+        int city = queue[head];
+        head = (head+1) % size;
+        count--;
+        queued[city] = false;
+        return city;
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * A way of making a child of a GA from one parent by a small change.
+ * The built in methods are EXCHANGE and INVERSION.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public interface MutationOperator
+{
+    MutationOperator EXCHANGE = TSP_GA::exchangeMutation;
+    MutationOperator INVERSION = TSP_GA::inversionMutation;
+
+    /**
+     * Writes a mutated copy of a parent, which must keep city 0 at index 0. The
+     * parent is read from ga.parents() and the child written to ga.children().
+     * @param ga The GA breeding.
+     * @param parent The index of the parent.
+     * @param child The individual to write the child to.
+     * @return The fitness of the child.
+     */
+    int mutate(TSP_GA ga, int parent, int child);
+}
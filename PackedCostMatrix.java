@@ -0,0 +1,393 @@
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.SplittableRandom;
+
+/**
+ * A compact cost matrix for explicit instances.
+ * For a symmetric instance only the lower triangle (with the diagonal) is
+ * stored; a directed (asymmetric) instance stores every row in full. Either
+ * is one flat run of 1, 2 or 4 byte values, the narrowest that fits the
+ * largest cost.
+ * The values are held in a primitive array on the heap, in direct buffers when 
+ * there are too many for one array, or in a memory mapped file written by 
+ * save(), so a converted instance opens without parsing and its pages are 
+ * shared by every JVM using it.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class PackedCostMatrix implements CostMatrix
+{
+    // ########## CONSTANTS ##########
+    private static final int MAGIC = 0x54535043; // "TSPC"
+    private static final int VERSION = 1;
+    private static final int HEADER = 16; // Magic, version, size and width
+    private static final int DIRECTED = 0x100; // Set in the saved width of a directed matrix
+    private static final int SEGMENT_BITS = 30; // Each buffer holds up to 1GB
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS)-1;
+    private static final int CHUNK = 1 << 20; // Bytes of a heap matrix written at a time
+    private static final int SAMPLE = 2048; // Most cities in the int[][] timed by compare()
+
+    // ########## VARIABLES ##########
+    private final int size; // The number of cities
+    private final int width; // Bytes per cost: 1, 2 or 4
+    private final boolean directed; // Whether every row is stored in full
+    // The lower triangle, or the full matrix if directed, row by row. Only one
+    // of the arrays or the segments is used.
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final int[] ints;
+    private final ByteBuffer[] segments;
+    private static volatile long sink; // Lookup totals of compare(), so the lookups are not removed
+
+    /**
+     * Creates an empty symmetric matrix on the heap, to be filled with set().
+     * @param size The number of cities.
+     * @param maxCost The largest cost that will be stored.
+     */
+    public PackedCostMatrix(int size, int maxCost) {
+        this(size, maxCost, false);
+    }
+
+    /**
+     * Creates an empty matrix on the heap, to be filled with set().
+     * @param size The number of cities.
+     * @param maxCost The largest cost that will be stored.
+     * @param directed True to store the cost each way round (an asymmetric
+     *                 TSP), taking twice the memory.
+     */
+    public PackedCostMatrix(int size, int maxCost, boolean directed) {
+        this.size = size;
+        this.width = maxCost <= 0xFF ? 1 : maxCost <= 0xFFFF ? 2 : 4;
+        this.directed = directed;
+        long entries = entries(size, directed);
+        boolean heap = entries < Integer.MAX_VALUE-8; // Largest array the JVM allows
+        bytes = heap && width == 1 ? new byte[(int)entries] : null;
+        shorts = heap && width == 2 ? new short[(int)entries] : null;
+        ints = heap && width == 4 ? new int[(int)entries] : null;
+        if(heap) {
+            segments = null;
+        }
+        else {
+            long length = entries*width;
+            segments = new ByteBuffer[(int)((length+SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for(int i = 0; i < segments.length; i++) {
+                int segmentLength = (int)Math.min(SEGMENT_MASK+1, length-((long)i << SEGMENT_BITS));
+                segments[i] = ByteBuffer.allocateDirect(segmentLength).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    /**
+     * Creates a matrix over already filled segments.
+     */
+    private PackedCostMatrix(int size, int width, boolean directed, ByteBuffer[] segments) {
+        this.size = size;
+        this.width = width;
+        this.directed = directed;
+        this.segments = segments;
+        bytes = null;
+        shorts = null;
+        ints = null;
+    }
+
+    /**
+     * Copies a cost matrix, directed if it is not symmetric.
+     * @param matrix The matrix to copy.
+     * @return The packed copy.
+     */
+    public static PackedCostMatrix of(CostMatrix matrix) {
+        boolean directed = !matrix.symmetric();
+        int max = 0;
+        for(int i = 0; i < matrix.size(); i++) {
+            for(int j = 0; j <= (directed ? matrix.size()-1 : i); j++) {
+                max = Math.max(max, matrix.cost(i, j));
+            }
+        }
+        PackedCostMatrix packed = new PackedCostMatrix(matrix.size(), max, directed);
+        packed.copy(matrix);
+        return packed;
+    }
+
+    /**
+     * Returns a matrix wide enough for a larger cost, copying this one if it is
+     * too narrow.
+     * @param maxCost The largest cost that will be stored.
+     * @return This matrix, or a wider copy.
+     */
+    public PackedCostMatrix widen(int maxCost) {
+        if(maxCost <= (width == 1 ? 0xFF : width == 2 ? 0xFFFF : Integer.MAX_VALUE)) {
+            return this;
+        }
+        PackedCostMatrix wider = new PackedCostMatrix(size, maxCost, directed);
+        wider.copy(this);
+        return wider;
+    }
+
+    /**
+     * Sets every stored cost from another matrix of the same size.
+     */
+    private void copy(CostMatrix matrix) {
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j <= (directed ? size-1 : i); j++) {
+                set(i, j, matrix.cost(i, j));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cost(int from, int to) {
+        // min/max rather than a branch, which random pairs would mispredict
+        long index = directed ? (long)from*size+to : index(Math.max(from, to), Math.min(from, to));
+        if(shorts != null) {
+            return shorts[(int)index] & 0xFFFF;
+        }
+        if(bytes != null) {
+            return bytes[(int)index] & 0xFF;
+        }
+        if(ints != null) {
+            return ints[(int)index];
+        }
+        long offset = index*width;
+        ByteBuffer segment = segments[(int)(offset >>> SEGMENT_BITS)];
+        int position = (int)(offset & SEGMENT_MASK);
+        switch(width) {
+            case 1:
+                return segment.get(position) & 0xFF;
+            case 2:
+                return segment.getShort(position) & 0xFFFF;
+            default:
+                return segment.getInt(position);
+        }
+    }
+
+    /**
+     * Sets the cost between two cities, in both directions unless the matrix
+     * is directed.
+     * @param from The first city.
+     * @param to The second city.
+     * @param cost The cost, which must fit the width of the matrix.
+     */
+    public void set(int from, int to, int cost) {
+        long index = directed ? (long)from*size+to : from >= to ? index(from, to) : index(to, from);
+        if(segments == null) {
+            if(width == 1) {
+                bytes[(int)index] = (byte)cost;
+            }
+            else if(width == 2) {
+                shorts[(int)index] = (short)cost;
+            }
+            else {
+                ints[(int)index] = cost;
+            }
+            return;
+        }
+        long offset = index*width;
+        ByteBuffer segment = segments[(int)(offset >>> SEGMENT_BITS)];
+        int position = (int)(offset & SEGMENT_MASK);
+        switch(width) {
+            case 1:
+                segment.put(position, (byte)cost);
+                break;
+            case 2:
+                segment.putShort(position, (short)cost);
+                break;
+            default:
+                segment.putInt(position, cost);
+                break;
+        }
+    }
+
+    /**
+     * @return The number of bytes used to store the costs.
+     */
+    public long footprint() {
+        return entries(size, directed)*width;
+    }
+
+    public boolean symmetric() {
+        return !directed;
+    }
+
+    /**
+     * @return The number of bytes per cost.
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Writes the matrix to a file that can be opened with open().
+     * @param filename The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(width | (directed ? DIRECTED : 0)).flip();
+            while(header.hasRemaining()) {
+                channel.write(header);
+            }
+            if(segments == null) { // Write the heap array a chunk at a time, little endian
+                ByteBuffer chunk = ByteBuffer.allocate(CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+                long entries = entries(size, directed);
+                int perChunk = CHUNK/width;
+                for(long start = 0; start < entries; start += perChunk) {
+                    int count = (int)Math.min(perChunk, entries-start);
+                    chunk.clear();
+                    if(width == 1) {
+                        chunk.put(bytes, (int)start, count);
+                    }
+                    else if(width == 2) {
+                        chunk.asShortBuffer().put(shorts, (int)start, count);
+                    }
+                    else {
+                        chunk.asIntBuffer().put(ints, (int)start, count);
+                    }
+                    chunk.limit(count*width).position(0);
+                    while(chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+                return;
+            }
+            for(ByteBuffer segment : segments) {
+                ByteBuffer buffer = segment.duplicate();
+                buffer.clear();
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens a matrix written by save() by memory mapping it read only.
+     * @param filename The file to open.
+     * @return The mapped matrix.
+     * @throws IOException If the file cannot be read or is not a packed matrix.
+     */
+    public static PackedCostMatrix open(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a packed cost matrix: " + filename);
+            }
+            int size = header.getInt(), width = header.getInt();
+            boolean directed = (width & DIRECTED) != 0;
+            width &= ~DIRECTED;
+            long bytes = entries(size, directed)*width;
+            if(channel.size() < HEADER+bytes) {
+                throw new IOException("Truncated packed cost matrix: " + filename);
+            }
+            ByteBuffer[] segments = new ByteBuffer[(int)((bytes+SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for(int i = 0; i < segments.length; i++) {
+                long start = (long)i << SEGMENT_BITS;
+                long length = Math.min(SEGMENT_MASK+1, bytes-start);
+                // The mapping stays valid after the channel is closed
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER+start, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new PackedCostMatrix(size, width, directed, segments);
+        }
+    }
+
+    /**
+     * @param filename The file to check.
+     * @return True if the file starts like a file written by save().
+     */
+    public static boolean isPacked(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        }
+        catch (IOException e) {
+            return false; // Too short, or unreadable, let the text loader report it
+        }
+    }
+
+    /**
+     * Prints the memory footprint and random lookup throughput of a matrix next
+     * to the same costs held as an int[SIZE][SIZE]. The int[][] footprint is
+     * worked out rather than allocated, and its lookups are timed on the costs
+     * of a random sample of at most 2048 cities, which fits in memory whatever
+     * the TSP; a sample that fits in cache times faster than the whole would.
+     * @param matrix The matrix to report on.
+     */
+    public static void compare(CostMatrix matrix) {
+        int size = matrix.size();
+        // Each row is an int[] object with a 16 byte header, plus the outer array
+        long denseBytes = 16L+4L*size+size*(16L+4L*size);
+        int sampleSize = Math.min(size, SAMPLE);
+        int[] cities = new int[size];
+        SplittableRandom random = new SplittableRandom(1);
+        for(int i = 0; i < size; i++) {
+            int j = random.nextInt(i+1); // Inside out Fisher-Yates, the first sampleSize are the sample
+            cities[i] = cities[j];
+            cities[j] = i;
+        }
+        int[][] sample = new int[sampleSize][sampleSize];
+        for(int i = 0; i < sampleSize; i++) {
+            for(int j = 0; j < sampleSize; j++) {
+                sample[i][j] = matrix.cost(cities[i], cities[j]);
+            }
+        }
+        System.out.println("##### COST STORAGE #####");
+        long rate = lookupRate(matrix);
+        System.out.println("int[][]: "+denseBytes+" bytes, "+lookupRate(new DenseCostMatrix(sample))
+            +" lookups/s"+(sampleSize < size ? " (sample of "+sampleSize+" cities)" : ""));
+        System.out.println(matrix.getClass().getSimpleName()+": "+matrix.footprint()
+            +" bytes, "+rate+" lookups/s");
+    }
+
+    /**
+     * @return The number of random lookups per second, after warming up.
+     */
+    private static long lookupRate(CostMatrix matrix) {
+        int pairs = 1 << 20;
+        int[] from = new int[pairs], to = new int[pairs];
+        SplittableRandom random = new SplittableRandom(1);
+        for(int i = 0; i < pairs; i++) {
+            from[i] = random.nextInt(matrix.size());
+            to[i] = random.nextInt(matrix.size());
+        }
+        long total = 0, time = 0;
+        for(int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < pairs; i++) {
+                total += matrix.cost(from[i], to[i]);
+            }
+            if(round >= 10) { // The first rounds are warm up
+                time += System.nanoTime()-start;
+            }
+        }
+        sink += total;
+        return (long)(10.0*pairs/(time/1e9));
+    }
+
+    /**
+     * @return The position of row i, column j (j <= i) in the lower triangle.
+     */
+    private static long index(int i, int j) {
+        return (long)i*(i+1)/2+j;
+    }
+
+    /**
+     * @return The number of values stored for a matrix: the lower triangle,
+     *         or every value if directed.
+     */
+    private static long entries(int size, boolean directed) {
+        return directed ? (long)size*size : (long)size*(size+1)/2;
+    }
+}
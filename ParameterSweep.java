@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the settings of the GA on one TSP.
+ * Parameters are GAConfig settings by name, each with a list of values or a
+ * range of whole numbers. Configs are taken from every combination of the
+ * values (grid) or sampled at random, then raced by successive halving: every
+ * config is run with the same seeds for a short number of generations, the
+ * worse half by mean result are dropped, and the rest are run again for twice
+ * as many generations, until one config is left or the full generations of the
+ * base config are reached. Runs are spread over a pool of threads.
+ * The result is a ranked report of quality against time for every config,
+ * those that lasted longest first.
+ * Times are wall times of runs sharing the machine, so compare them with each
+ * other rather than with single runs.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class ParameterSweep
+{
+    // ########## CONSTANTS ##########
+    private static final int SEEDS = 4; // Runs of each config per round
+    private static final int FIRST_GENERATIONS = 250; // Generations of the first round
+    private static final int KEEP = 2; // 1/KEEP of the configs go on to each next round
+    private static final int SHOW = 10; // Configs printed at the end
+
+    // ########## VARIABLES ##########
+    private final TSP_GA source; // The TSP to tune on
+    private final GAConfig base; // Settings that are not swept
+    private final List<String> names = new ArrayList<String>(); // Swept settings
+    private final List<String[]> values = new ArrayList<String[]>(); // Values of each, null for a range
+    private final List<int[]> ranges = new ArrayList<int[]>(); // Min and max of each range
+    private int seeds = SEEDS;
+    private int firstGenerations = FIRST_GENERATIONS;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The runs of one config.
+     */
+    private static class Trial
+    {
+        private final GAConfig config; // The settings
+        private final String label; // The swept settings only
+        private int round; // The last round reached
+        private int generations; // Generations of the runs in that round
+        private int[] results; // Best fitness of each seed in that round
+        private long[] times; // Time of each seed in that round, in ns
+
+        private Trial(GAConfig config, String label) {
+            this.config = config;
+            this.label = label;
+        }
+
+        private double mean() {
+            double total = 0;
+            for(int result : results) {
+                total += result;
+            }
+            return total/results.length;
+        }
+
+        private double stdev() {
+            double mean = mean(), total = 0;
+            for(int result : results) {
+                total += (result-mean)*(result-mean);
+            }
+            return results.length > 1 ? Math.sqrt(total/(results.length-1)) : 0;
+        }
+
+        private int best() {
+            int best = Integer.MAX_VALUE;
+            for(int result : results) {
+                best = Math.min(best, result);
+            }
+            return best;
+        }
+
+        private long meanTime() {
+            long total = 0;
+            for(long time : times) {
+                total += time;
+            }
+            return total/times.length/1000000;
+        }
+    }
+
+    /**
+     * @param source The GA whose TSP is tuned on, and whose settings are used
+     *               for any setting not swept.
+     */
+    public ParameterSweep(TSP_GA source) {
+        this.source = source;
+        this.base = source.getConfig();
+    }
+
+    /**
+     * Adds a setting to sweep over a list of values.
+     * @param name A GAConfig setting, see GAConfig.set().
+     * @param settings The values to try.
+     * @throws IllegalArgumentException If the setting or a value is not valid.
+     */
+    public void addValues(String name, String... settings) {
+        for(String value : settings) {
+            new GAConfig(base).set(name, value); // Check it now rather than mid sweep
+        }
+        names.add(name);
+        values.add(settings.clone());
+        ranges.add(null);
+    }
+
+    /**
+     * Adds a whole number setting to sample from a range. Ranges can only be
+     * used by random(), not grid().
+     * @param name A GAConfig setting, see GAConfig.set().
+     * @param min The smallest value.
+     * @param max The largest value.
+     * @throws IllegalArgumentException If the setting or range is not valid.
+     */
+    public void addRange(String name, int min, int max) {
+        new GAConfig(base).set(name, Integer.toString(min));
+        new GAConfig(base).set(name, Integer.toString(max));
+        names.add(name);
+        values.add(null);
+        ranges.add(new int[] {min, max});
+    }
+
+    /**
+     * @param seeds The runs of each config per round.
+     * @param firstGenerations The generations of the first round.
+     * @param threads The number of worker threads.
+     */
+    public void setRace(int seeds, int firstGenerations, int threads) {
+        this.seeds = seeds;
+        this.firstGenerations = firstGenerations;
+        this.threads = threads;
+    }
+
+    /**
+     * Races every combination of the values.
+     * @param report The file to write the ranked report to.
+     * @param seed The seed of the runs.
+     * @throws IOException If the report cannot be written.
+     */
+    public void grid(String report, long seed) throws IOException {
+        List<Trial> trials = new ArrayList<Trial>();
+        trials.add(new Trial(new GAConfig(base), ""));
+        for(int p = 0; p < names.size(); p++) {
+            if(values.get(p) == null) {
+                throw new IllegalStateException("Range of "+names.get(p)+" can only be sampled");
+            }
+            List<Trial> product = new ArrayList<Trial>();
+            for(Trial trial : trials) {
+                for(String value : values.get(p)) {
+                    GAConfig config = new GAConfig(trial.config);
+                    config.set(names.get(p), value);
+                    product.add(new Trial(config, label(trial.label, names.get(p), value)));
+                }
+            }
+            trials = product;
+        }
+        race(trials, report, seed);
+    }
+
+    /**
+     * Races configs sampled at random, each setting drawn uniformly from its
+     * values or range. A config is only tried once.
+     * @param samples The number of configs.
+     * @param report The file to write the ranked report to.
+     * @param seed The seed of the sampling and of the runs.
+     * @throws IOException If the report cannot be written.
+     */
+    public void random(int samples, String report, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Trial> trials = new ArrayList<Trial>();
+        HashSet<String> seen = new HashSet<String>();
+        for(int attempt = 0; attempt < samples*10 && trials.size() < samples; attempt++) {
+            GAConfig config = new GAConfig(base);
+            String label = "";
+            for(int p = 0; p < names.size(); p++) {
+                int[] range = ranges.get(p);
+                String value = range != null
+                    ? Integer.toString(range[0]+random.nextInt(range[1]-range[0]+1))
+                    : values.get(p)[random.nextInt(values.get(p).length)];
+                config.set(names.get(p), value);
+                label = label(label, names.get(p), value);
+            }
+            if(seen.add(label)) {
+                trials.add(new Trial(config, label));
+            }
+        }
+        race(trials, report, seed);
+    }
+
+    /**
+     * Races configs by successive halving, then writes and prints the report.
+     */
+    private void race(List<Trial> trials, String report, long seed) throws IOException {
+        System.out.println("SWEEPING "+trials.size()+" CONFIGS, "+seeds+" SEEDS EACH ON "+threads+" THREADS (SEED "+seed+")");
+        long startTime = System.currentTimeMillis();
+        List<Trial> alive = new ArrayList<Trial>(trials);
+        int generations = Math.min(firstGenerations, base.generations());
+        for(int round = 1; ; round++) {
+            runRound(alive, round, generations, seed);
+            System.out.println("Round "+round+": "+alive.size()+" configs, "+generations+" generations");
+            if(alive.size() <= 1 || generations >= base.generations()) {
+                break;
+            }
+            alive.sort(Comparator.comparingDouble(Trial::mean));
+            alive = new ArrayList<Trial>(alive.subList(0, (alive.size()+KEEP-1)/KEEP));
+            generations = (int)Math.min((long)generations*KEEP, base.generations());
+        }
+        // Configs that lasted longest first, then by mean result
+        List<Trial> ranked = new ArrayList<Trial>(trials);
+        ranked.sort(Comparator.comparingInt((Trial trial) -> -trial.round).thenComparingDouble(Trial::mean));
+        List<String> lines = new ArrayList<String>();
+        lines.add("rank,round,generations,mean,stdev,best,mean ms,settings");
+        for(int i = 0; i < ranked.size(); i++) {
+            Trial trial = ranked.get(i);
+            lines.add((i+1)+","+trial.round+","+trial.generations+","+String.format("%.1f", trial.mean())+","
+                +String.format("%.1f", trial.stdev())+","+trial.best()+","+trial.meanTime()+","+trial.label);
+            if(i < SHOW) {
+                System.out.println((i+1)+": mean "+String.format("%.1f", trial.mean())+", best "+trial.best()
+                    +", "+trial.meanTime()+"ms/run ("+trial.generations+" generations) "+trial.label);
+            }
+        }
+        Files.write(Paths.get(report), lines);
+        System.out.println("Best config: "+ranked.get(0).config);
+        System.out.println("Execution time:"+(System.currentTimeMillis()-startTime)+"ms, report in "+report);
+    }
+
+    /**
+     * Runs every config for one round, seed i of every config using the same
+     * seed, so configs are compared on the same random streams.
+     */
+    private void runRound(List<Trial> alive, int round, int generations, long seed) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> runs = new ArrayList<Future<?>>();
+        for(Trial trial : alive) {
+            trial.round = round;
+            trial.generations = generations;
+            trial.results = new int[seeds];
+            trial.times = new long[seeds];
+            GAConfig config = new GAConfig(trial.config);
+            config.setGenerations(generations);
+            for(int s = 0; s < seeds; s++) {
+                int index = s;
+                runs.add(pool.submit(() -> {
+                    TSP_GA worker = source.copy(config);
+                    worker.reseed(new GARandom(seed+index));
+                    long start = System.nanoTime();
+                    worker.start();
+                    for(int g = 0; g < generations; g++) {
+                        worker.step();
+                    }
+                    trial.times[index] = System.nanoTime()-start;
+                    trial.results[index] = worker.bestFitness();
+                    return null;
+                }));
+            }
+        }
+        try {
+            for(Future<?> run : runs) {
+                run.get(); // Also makes the results written by the workers visible
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sweep interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Sweep run failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return A label with one more setting added.
+     */
+    private static String label(String label, String name, String value) {
+        return (label.isEmpty() ? "" : label+" ")+name+"="+value;
+    }
+}
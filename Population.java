@@ -0,0 +1,173 @@
+/**
+ * The routes of one generation, held in a single flat buffer rather than an
+ * array per individual, so the routes lie next to each other in memory and are
+ * read in order by the operators and evaluation.
+ * Individual i takes the positions offset(i) to offset(i)+size-1 of the
+ * buffer, and operators work on those offsets with get() and set(). Cities are
+ * stored as chars for TSPs of up to 65536 cities, half the memory of ints, and
+ * as ints for larger ones; create() picks the encoding.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public abstract class Population
+{
+    // ########## CONSTANTS ##########
+    private static final int MAX_NARROW = 65536; // Most cities stored as chars
+
+    // ########## VARIABLES ##########
+    protected final int count; // The number of individuals
+    protected final int size; // The number of cities of each route
+
+    /**
+     * Routes stored as chars.
+     */
+    private static class Narrow extends Population
+    {
+        private final char[] cities;
+
+        private Narrow(int count, int size) {
+            super(count, size);
+            cities = new char[count*size];
+        }
+
+        int get(int index) {
+            return cities[index];
+        }
+
+        void set(int index, int city) {
+            cities[index] = (char)city;
+        }
+
+        void copy(int individual, Population to, int target) {
+            System.arraycopy(cities, individual*size, ((Narrow)to).cities, target*size, size);
+        }
+    }
+
+    /**
+     * Routes stored as ints.
+     */
+    private static class Wide extends Population
+    {
+        private final int[] cities;
+
+        private Wide(int count, int size) {
+            super(count, size);
+            cities = new int[count*size];
+        }
+
+        int get(int index) {
+            return cities[index];
+        }
+
+        void set(int index, int city) {
+            cities[index] = city;
+        }
+
+        void copy(int individual, Population to, int target) {
+            System.arraycopy(cities, individual*size, ((Wide)to).cities, target*size, size);
+        }
+
+        void read(int individual, int[] route) {
+            System.arraycopy(cities, individual*size, route, 0, size);
+        }
+
+        void write(int individual, int[] route) {
+            System.arraycopy(route, 0, cities, individual*size, size);
+        }
+    }
+
+    private Population(int count, int size) {
+        if((long)count*size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Population too large: "+count+" x "+size+" cities");
+        }
+        this.count = count;
+        this.size = size;
+    }
+
+    /**
+     * Creates a population in the narrowest encoding that holds the cities.
+     * @param count The number of individuals.
+     * @param size The number of cities of each route.
+     * @return The population, with every city 0.
+     */
+    public static Population create(int count, int size) {
+        return size <= MAX_NARROW ? new Narrow(count, size) : new Wide(count, size);
+    }
+
+    /**
+     * @return The number of individuals.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return The number of cities of each route.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param individual The index of an individual.
+     * @return The index in the buffer of the first city of its route.
+     */
+    int offset(int individual) {
+        return individual*size;
+    }
+
+    /**
+     * @param index An index in the buffer, see offset().
+     * @return The city there.
+     */
+    abstract int get(int index);
+
+    /**
+     * @param index An index in the buffer, see offset().
+     * @param city The city to put there.
+     */
+    abstract void set(int index, int city);
+
+    /**
+     * Copies a route to another population of the same TSP.
+     * @param individual The individual to copy.
+     * @param to The population to copy to, made by create() with the same size.
+     * @param target The individual to copy over.
+     */
+    abstract void copy(int individual, Population to, int target);
+
+    /**
+     * @param individual The individual to read.
+     * @param route The array to copy its route to.
+     */
+    void read(int individual, int[] route) {
+        int offset = individual*size;
+        for(int i = 0; i < size; i++) {
+            route[i] = get(offset+i);
+        }
+    }
+
+    /**
+     * @param individual The individual to overwrite.
+     * @param route The route to copy in.
+     */
+    void write(int individual, int[] route) {
+        int offset = individual*size;
+        for(int i = 0; i < size; i++) {
+            set(offset+i, route[i]);
+        }
+    }
+
+    /**
+     * Swaps the routes of two individuals.
+     */
+    void swap(int a, int b) {
+        int offsetA = a*size, offsetB = b*size;
+        for(int i = 0; i < size; i++) {
+            int city = get(offsetA+i);
+            set(offsetA+i, get(offsetB+i));
+            set(offsetB+i, city);
+        }
+    }
+}
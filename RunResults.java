@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects the results of a batch of GA runs that may complete in any order.
+ * Results are stored by run index so the summary only depends on which runs
+ * were made, not on which thread made them.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class RunResults
+{
+    private int[] results = new int[64]; // Best fitness of each run, by run index
+    private boolean[] completed = new boolean[64]; // Whether each run completed
+    // Candidates for the best route. A run is only kept if no earlier run did as
+    // well, as later runs may be discarded when the batch finishes.
+    private ArrayList<int[]> candidates = new ArrayList<int[]>();
+    private ArrayList<Integer> candidateRuns = new ArrayList<Integer>();
+    private int size; // The number of cities of the TSP instance
+    private int runs; // The number of runs in the batch
+    private long time; // Wall time of the batch in ms
+
+    /**
+     * @param size The number of cities of the TSP instance.
+     */
+    public RunResults(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Records the result of a completed run.
+     * @param run The index of the run.
+     * @param result The best fitness found by the run.
+     * @param route The best route found by the run.
+     */
+    public synchronized void record(int run, int result, int[] route) {
+        if(run >= results.length) {
+            int length = Math.max(run+1, results.length*2);
+            results = Arrays.copyOf(results, length);
+            completed = Arrays.copyOf(completed, length);
+        }
+        results[run] = result;
+        completed[run] = true;
+        // Ties go to the earliest run so the best route does not depend on timing
+        for(int i = candidates.size()-1; i >= 0; i--) {
+            int other = candidateRuns.get(i);
+            if(other <= run && results[other] <= result) {
+                return; // Dominated by an earlier run
+            }
+            if(other >= run && results[other] >= result) {
+                candidates.remove(i);
+                candidateRuns.remove(i);
+            }
+        }
+        candidates.add(Arrays.copyOf(route, size));
+        candidateRuns.add(run);
+    }
+
+    /**
+     * Closes the batch, discarding any run after the last run.
+     * @param runs The number of runs in the batch.
+     * @param time The wall time of the batch in ms.
+     */
+    public synchronized void finish(int runs, long time) {
+        this.runs = runs;
+        this.time = time;
+        for(int i = 0; i < runs; i++) {
+            if(i >= completed.length || !completed[i]) {
+                throw new IllegalStateException("Run "+i+" did not complete");
+            }
+        }
+    }
+
+    /**
+     * @return The number of runs in the batch.
+     */
+    public synchronized int count() {
+        return runs;
+    }
+
+    /**
+     * @return The best result of the batch.
+     */
+    public synchronized int best() {
+        int best = results[0];
+        for(int i = 1; i < runs; i++) {
+            best = Math.min(best, results[i]);
+        }
+        return best;
+    }
+
+    /**
+     * @return The mean result of the batch.
+     */
+    public synchronized int mean() {
+        long total = 0;
+        for(int i = 0; i < runs; i++) {
+            total += results[i];
+        }
+        return (int)(total/runs);
+    }
+
+    /**
+     * @return The min, quartiles and max of the batch results.
+     */
+    public synchronized String distribution() {
+        int[] sorted = Arrays.copyOf(results, runs);
+        Arrays.sort(sorted);
+        return sorted[0]+":"+sorted[(runs-1)/4]+":"+sorted[(runs-1)/2]+":"
+            +sorted[(3*(runs-1))/4]+":"+sorted[runs-1];
+    }
+
+    /**
+     * @return The best route of the batch.
+     */
+    public synchronized int[] bestRoute() {
+        int best = -1;
+        for(int i = 0; i < candidates.size(); i++) {
+            int run = candidateRuns.get(i);
+            if(run < runs && (best == -1 || results[run] < results[candidateRuns.get(best)])) {
+                best = i;
+            }
+        }
+        return candidates.get(best).clone();
+    }
+
+    /**
+     * @return The wall time of the batch in ms.
+     */
+    public synchronized long time() {
+        return time;
+    }
+}
@@ -0,0 +1,413 @@
+import java.util.Arrays;
+
+/**
+ * Builds starting tours for the GA, so a run starts from good routes rather
+ * than only random ones. Every tour starts with city 0.
+ * The methods are:
+ *  - NEAREST_NEIGHBOUR: from a random city, go to the nearest city not yet
+ *    visited. Uses the candidate lists, so is close to O(SIZE) unless it
+ *    has to search for a city outside them.
+ *  - GREEDY_EDGE: add the cheapest candidate edges that keep every city at
+ *    degree 2 or less and close no cycle early, then join the paths left
+ *    nearest end first. Edge costs are varied by up to 10% at random, so
+ *    every tour is different. On an asymmetric TSP edges are directed, and
+ *    each city has at most one edge out and one in.
+ *  - SPACE_FILLING_CURVE: visit the cities in the order of a Hilbert curve
+ *    through their coordinates, in O(SIZE log SIZE). The curve is turned,
+ *    mirrored and shifted at random. Only for TSPs with coordinates, others
+ *    get a nearest neighbour tour instead.
+ *  - RANDOM_INSERTION: insert the cities in a random order, each where it
+ *    adds least to the tour. Runs in O(SIZE^2).
+ * Random tours are a Fisher-Yates shuffle, see shuffle().
+ * Read only once made, so one can build tours on any number of threads, each
+ * with its own generator.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class Seeding
+{
+    // ########## CONSTANTS ##########
+    public static final int NEAREST_NEIGHBOUR = 0;
+    public static final int GREEDY_EDGE = 1;
+    public static final int SPACE_FILLING_CURVE = 2;
+    public static final int RANDOM_INSERTION = 3;
+    public static final int METHODS = 4; // The number of methods
+    private static final double GREEDY_NOISE = 0.1; // Largest share an edge cost is varied by
+    private static final int CURVE_BITS = 15; // The Hilbert curve covers a 2^15 square grid
+
+    // ########## VARIABLES ##########
+    private final CostMatrix cost; // The TSP costs
+    private final int[][] neighbours; // Candidate lists, see LocalSearch.nearestNeighbours()
+    private final int size; // The number of cities
+    private final boolean directed; // Whether costs differ by direction, see CostMatrix.symmetric()
+    private final double[] x, y; // Coordinates of each city, null if the TSP has none
+
+    /**
+     * @param cost The TSP costs.
+     * @param neighbours The candidate lists, needed for nearest neighbour and
+     *                   greedy edge tours, and curve tours without coordinates.
+     */
+    public Seeding(CostMatrix cost, int[][] neighbours) {
+        this.cost = cost;
+        this.neighbours = neighbours;
+        size = cost.size();
+        directed = !cost.symmetric();
+        if(cost instanceof CoordinateCostMatrix) {
+            CoordinateCostMatrix coordinates = (CoordinateCostMatrix)cost;
+            x = new double[size];
+            y = new double[size];
+            for(int i = 0; i < size; i++) {
+                x[i] = coordinates.x(i);
+                y[i] = coordinates.y(i);
+            }
+        } else {
+            x = null;
+            y = null;
+        }
+    }
+
+    /**
+     * @param method A seeding method.
+     * @param cost The TSP costs.
+     * @return True if the method needs candidate lists on this TSP.
+     */
+    public static boolean needsNeighbours(int method, CostMatrix cost) {
+        return method == NEAREST_NEIGHBOUR || method == GREEDY_EDGE
+            || (method == SPACE_FILLING_CURVE && !(cost instanceof CoordinateCostMatrix));
+    }
+
+    /**
+     * Builds a tour.
+     * @param method NEAREST_NEIGHBOUR, GREEDY_EDGE, SPACE_FILLING_CURVE or
+     *               RANDOM_INSERTION.
+     * @param route The array to write the tour to.
+     * @param random The generator of this thread.
+     */
+    public void build(int method, int[] route, GARandom random) {
+        switch(method) {
+            case NEAREST_NEIGHBOUR:
+                nearestNeighbour(route, random);
+                break;
+            case GREEDY_EDGE:
+                greedyEdge(route, random);
+                break;
+            case SPACE_FILLING_CURVE:
+                if(x == null) {
+                    nearestNeighbour(route, random);
+                } else {
+                    spaceFillingCurve(route, random);
+                }
+                break;
+            case RANDOM_INSERTION:
+                randomInsertion(route, random);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid seeding method: "+method);
+        }
+    }
+
+    /**
+     * Writes a random tour starting with city 0, by a Fisher-Yates shuffle of
+     * the other cities in place, in O(SIZE).
+     * @param route The array to write the tour to.
+     * @param random The generator to use.
+     */
+    public static void shuffle(int[] route, GARandom random) {
+        for(int i = 0; i < route.length; i++) {
+            route[i] = i;
+        }
+        for(int i = route.length-1; i > 1; i--) {
+            int j = 1+random.nextInt(i); // Never position 0
+            int city = route[i];
+            route[i] = route[j];
+            route[j] = city;
+        }
+    }
+
+    /**
+     * Writes a nearest neighbour tour from a random city.
+     */
+    private void nearestNeighbour(int[] route, GARandom random) {
+        int[] order = new int[size];
+        // Cities not yet visited, in the first left places, and where each is
+        int[] left = new int[size], place = new int[size];
+        for(int i = 0; i < size; i++) {
+            left[i] = i;
+            place[i] = i;
+        }
+        int remaining = size;
+        int city = random.nextInt(size);
+        for(int step = 0; step < size; step++) {
+            order[step] = city;
+            // Remove the city from those left
+            int last = left[--remaining];
+            left[place[city]] = last;
+            place[last] = place[city];
+            place[city] = -1;
+            if(remaining == 0) {
+                break;
+            }
+            int next = -1;
+            for(int candidate : neighbours[city]) {
+                if(place[candidate] != -1) {
+                    next = candidate; // The nearest, as the lists are sorted
+                    break;
+                }
+            }
+            if(next == -1) {
+                // Every candidate visited, search all the cities left
+                int best = Integer.MAX_VALUE;
+                for(int i = 0; i < remaining; i++) {
+                    int c = cost.cost(city, left[i]);
+                    if(c < best) {
+                        best = c;
+                        next = left[i];
+                    }
+                }
+            }
+            city = next;
+        }
+        rotate(order, route);
+    }
+
+    /**
+     * Writes a greedy edge tour over the candidate edges, with their costs
+     * varied at random. On an asymmetric TSP the edges are directed: each city
+     * gets at most one edge out and one in, and paths are joined end to start.
+     */
+    private void greedyEdge(int[] route, GARandom random) {
+        // Candidate edges sorted by varied cost, each packed as the bits of the
+        // float cost (which sort as ints, being positive) above its index
+        int candidates = 0;
+        for(int[] list : neighbours) {
+            candidates += list.length; // Lists of a sparse TSP differ in length
+        }
+        int[] from = new int[candidates], to = new int[candidates];
+        long[] edges = new long[candidates];
+        int count = 0;
+        for(int a = 0; a < size; a++) {
+            for(int b : neighbours[a]) {
+                if(directed || a < b || !contains(neighbours[b], a)) { // Each edge once
+                    float varied = (float)(cost.cost(a, b)*(1+GREEDY_NOISE*random.nextDouble())+1);
+                    from[count] = a;
+                    to[count] = b;
+                    edges[count] = (long)Float.floatToIntBits(varied) << 32 | count;
+                    count++;
+                }
+            }
+        }
+        Arrays.sort(edges, 0, count);
+        // The tour neighbours of each city, or if directed the city after then
+        // the city before
+        int[] adjacent = new int[2*size];
+        int[] degree = new int[size]; // If directed, 1 for an edge out plus 2 for one in
+        int[] end = new int[size]; // The other end of the path a path end is on
+        for(int i = 0; i < size; i++) {
+            end[i] = i;
+        }
+        int added = 0;
+        for(int e = 0; e < count && added < size-1; e++) {
+            int index = (int)edges[e];
+            int a = from[index], b = to[index];
+            boolean free = directed ? (degree[a] & 1) == 0 && (degree[b] & 2) == 0
+                : degree[a] < 2 && degree[b] < 2;
+            if(free && end[a] != b) { // end[a] == b would close a cycle
+                link(a, b, adjacent, degree, end, directed);
+                added++;
+            }
+        }
+        // Join the paths left, nearest end first
+        int[] paths = new int[size]; // One end of each path not yet joined, its start if directed
+        int pathCount = 0;
+        for(int i = 0; i < size; i++) {
+            if(directed ? (degree[i] & 2) == 0 : degree[i] < 2 && end[i] >= i) {
+                paths[pathCount++] = i;
+            }
+        }
+        int head = paths[0], tail = end[head];
+        paths[0] = paths[--pathCount];
+        while(pathCount > 0) {
+            int best = Integer.MAX_VALUE, bestPath = 0, bestEnd = 0;
+            for(int p = 0; p < pathCount; p++) {
+                int one = paths[p], other = end[one];
+                int c1 = cost.cost(tail, one), c2 = directed ? Integer.MAX_VALUE : cost.cost(tail, other);
+                if(c1 < best) {
+                    best = c1;
+                    bestPath = p;
+                    bestEnd = one;
+                }
+                if(c2 < best) {
+                    best = c2;
+                    bestPath = p;
+                    bestEnd = other;
+                }
+            }
+            int newTail = end[bestEnd];
+            link(tail, bestEnd, adjacent, degree, end, directed);
+            tail = newTail;
+            paths[bestPath] = paths[--pathCount];
+        }
+        // Close the tour
+        if(directed) {
+            adjacent[2*tail] = head;
+            adjacent[2*head+1] = tail;
+        } else {
+            adjacent[2*tail+degree[tail]++] = head;
+            adjacent[2*head+degree[head]++] = tail;
+        }
+        // Walk the tour from city 0
+        int previous = adjacent[1], city = 0;
+        for(int i = 0; i < size; i++) {
+            route[i] = city;
+            int next = directed || adjacent[2*city] != previous ? adjacent[2*city] : adjacent[2*city+1];
+            previous = city;
+            city = next;
+        }
+    }
+
+    /**
+     * Joins the ends of two paths with an edge.
+     * @param a The end of a path, its last city if directed.
+     * @param b The end of another path, its first city if directed.
+     */
+    private static void link(int a, int b, int[] adjacent, int[] degree, int[] end, boolean directed) {
+        if(directed) {
+            adjacent[2*a] = b;
+            adjacent[2*b+1] = a;
+            degree[a] |= 1;
+            degree[b] |= 2;
+        } else {
+            adjacent[2*a+degree[a]++] = b;
+            adjacent[2*b+degree[b]++] = a;
+        }
+        int endA = end[a], endB = end[b];
+        end[endA] = endB;
+        end[endB] = endA;
+    }
+
+    /**
+     * Writes a tour in the order of a Hilbert curve through the coordinates.
+     */
+    private void spaceFillingCurve(int[] route, GARandom random) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for(int i = 0; i < size; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        int side = 1 << CURVE_BITS;
+        // The cities fill half the grid, so they can be shifted without wrapping
+        double scale = (side/2-1)/Math.max(Math.max(maxX-minX, maxY-minY), Double.MIN_NORMAL);
+        int symmetry = random.nextInt(8); // Swap and mirror the axes
+        int shiftX = random.nextInt(side/2), shiftY = random.nextInt(side/2);
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++) {
+            int gx = (int)((x[i]-minX)*scale), gy = (int)((y[i]-minY)*scale);
+            if((symmetry & 1) != 0) {
+                int t = gx;
+                gx = gy;
+                gy = t;
+            }
+            if((symmetry & 2) != 0) {
+                gx = side/2-1-gx;
+            }
+            if((symmetry & 4) != 0) {
+                gy = side/2-1-gy;
+            }
+            gx += shiftX;
+            gy += shiftY;
+            keys[i] = hilbert(gx, gy, side) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for(int i = 0; i < size; i++) {
+            order[i] = (int)keys[i];
+        }
+        rotate(order, route);
+    }
+
+    /**
+     * @return The distance along a Hilbert curve filling a side x side grid
+     *         of a point on the grid.
+     */
+    private static long hilbert(int x, int y, int side) {
+        long d = 0;
+        for(int s = side/2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0, ry = (y & s) > 0 ? 1 : 0;
+            d += (long)s*s*((3*rx) ^ ry);
+            // Rotate the quadrant so the curve joins up
+            if(ry == 0) {
+                if(rx == 1) {
+                    x = side-1-x;
+                    y = side-1-y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Writes a tour made by inserting the cities in a random order, each at
+     * its cheapest place.
+     */
+    private void randomInsertion(int[] route, GARandom random) {
+        int[] order = new int[size];
+        shuffle(order, random);
+        int[] next = new int[size]; // The city after each city on the tour so far
+        next[0] = order[1];
+        next[order[1]] = 0;
+        for(int i = 2; i < size; i++) {
+            int city = order[i];
+            int best = Integer.MAX_VALUE, after = 0;
+            int a = 0;
+            do {
+                int b = next[a];
+                int increase = cost.cost(a, city)+cost.cost(city, b)-cost.cost(a, b);
+                if(increase < best) {
+                    best = increase;
+                    after = a;
+                }
+                a = b;
+            } while(a != 0);
+            next[city] = next[after];
+            next[after] = city;
+        }
+        int city = 0;
+        for(int i = 0; i < size; i++) {
+            route[i] = city;
+            city = next[city];
+        }
+    }
+
+    /**
+     * Copies a tour so it starts at city 0.
+     * @param order The tour, starting anywhere.
+     * @param route The array to write it to.
+     */
+    private void rotate(int[] order, int[] route) {
+        int start = 0;
+        while(order[start] != 0) {
+            start++;
+        }
+        System.arraycopy(order, start, route, 0, size-start);
+        System.arraycopy(order, 0, route, size-start, start);
+    }
+
+    /**
+     * @return True if a list holds a city.
+     */
+    private static boolean contains(int[] list, int city) {
+        for(int other : list) {
+            if(other == city) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * A way of choosing parents from the population of a GA.
+ * The built in methods are TOURNAMENT and ROULETTE; others can be set on a
+ * GAConfig, reading the population through the accessors of TSP_GA.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public interface SelectionOperator
+{
+    SelectionOperator TOURNAMENT = TSP_GA::tournamentSelect;
+    SelectionOperator ROULETTE = new SelectionOperator() {
+        public void prepare(TSP_GA ga) {
+            ga.buildRoulette(); // Fitness is fixed for the generation, so build once
+        }
+
+        public int select(TSP_GA ga) {
+            return ga.rouletteSelect();
+        }
+    };
+
+    /**
+     * Called once per generation before any select(), while the fitness of the
+     * population is fixed.
+     * @param ga The GA selecting.
+     */
+    default void prepare(TSP_GA ga) {
+    }
+
+    /**
+     * @param ga The GA selecting.
+     * @return The index of the selected individual.
+     */
+    int select(TSP_GA ga);
+}
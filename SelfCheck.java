@@ -0,0 +1,278 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Self checks of properties the GA relies on but cannot check as it runs.
+ * Each check prints a line per case and the program exits with status 1 if
+ * any case failed, so it can guard a build with no test framework.
+ * The checks are:
+ *  - allocation: after warming up, a generation allocates no bytes on the
+ *    heap, for each selection method, with duplicates off or reused and
+ *    local search off or on the offspring.
+ *  - operators: every child of each crossover is a route of every city once
+ *    with city 0 first, and the fitness each mutation scores by delta, and
+ *    that carried through whole runs, equals the full cost of the route, on
+ *    symmetric TSPs and on random asymmetric dense and sparse TSPs.
+ *  - checkpoint: with a snapshot taken every generation, so most find the
+ *    last still being written, the checkpoint left by a run is of the
+ *    generation it finished on and records why it stopped.
+ * Run from the project directory, as the TSPLIB files are read from there.
+ *
+ * Usage: java SelfCheck [check ...]
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class SelfCheck
+{
+    // ########## CONSTANTS ##########
+    private static final String[] CHECKS = {"allocation", "operators", "checkpoint"};
+    private static final String[] INSTANCES = {"groetschel.tsp", "dantzig.tsp"};
+    private static final long SEED = 42; // Seed of the GA
+    private static final int WARMUP_GENERATIONS = 3000; // Generations before measuring, so the JIT has compiled them
+    private static final int GENERATIONS = 1000; // Generations measured
+    private static final int TRIALS = 2000; // Operator calls checked per case
+    private static final int RUN_GENERATIONS = 500; // Generations run before checking carried fitness
+    private static final int ASYMMETRIC_SIZE = 50; // Cities of the random asymmetric TSPs
+    private static final int SPARSE_DEGREE = 6; // Random edges leaving each city of the sparse TSP
+    private static final int CHECKPOINT_RUNS = 10; // Checkpointed runs per instance
+
+    // ########## VARIABLES ##########
+    private int failures; // Cases that failed
+
+    /**
+     * Runs the checks.
+     * @param args The checks to run, all of them if none.
+     */
+    public static void main(String[] args) throws Exception {
+        SelfCheck self = new SelfCheck();
+        List<String> checks = new ArrayList<String>(List.of(args.length == 0 ? CHECKS : args));
+        for(String check : checks) {
+            switch(check) {
+                case "allocation":
+                    self.allocation();
+                    break;
+                case "operators":
+                    self.operators();
+                    break;
+                case "checkpoint":
+                    self.checkpoint();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown check: " + check);
+            }
+        }
+        System.out.println(self.failures == 0 ? "All checks passed" : self.failures+" checks failed");
+        System.exit(self.failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Checks that warmed up generations allocate nothing, counted by the
+     * allocation counter of this thread.
+     */
+    private void allocation() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int[] selections = {TSP_GA.TOURNAMENT_SELECT, TSP_GA.ROULETTE_SELECT};
+        int[] duplicates = {TSP_GA.NO_TOUR_HASH, TSP_GA.REUSE_DUPLICATES};
+        int[] localSearches = {TSP_GA.NO_LOCAL_SEARCH, TSP_GA.LOCAL_SEARCH_OFFSPRING};
+        for(String instance : INSTANCES) {
+            CostMatrix cost = TSP_GA.read(instance);
+            for(int selection : selections) {
+                for(int duplicate : duplicates) {
+                    for(int localSearch : localSearches) {
+                        TSP_GA ga = new TSP_GA(cost);
+                        GAConfig config = ga.getConfig();
+                        config.setOperators(selection, TSP_GA.CYCLE_CROSSOVER, TSP_GA.INVERSION_MUTATION);
+                        config.setDuplicates(duplicate);
+                        config.setLocalSearch(localSearch, 1000);
+                        ga.setConfig(config);
+                        ga.reseed(new GARandom(SEED));
+                        ga.start();
+                        for(int g = 0; g < WARMUP_GENERATIONS; g++) {
+                            ga.step();
+                        }
+                        long startBytes = threads.getThreadAllocatedBytes(thread);
+                        for(int g = 0; g < GENERATIONS; g++) {
+                            ga.step();
+                        }
+                        long bytes = threads.getThreadAllocatedBytes(thread)-startBytes;
+                        report(bytes == 0, "allocation", instance
+                            +(selection == TSP_GA.TOURNAMENT_SELECT ? " tournament" : " roulette")
+                            +(duplicate == TSP_GA.NO_TOUR_HASH ? "" : " reuse")
+                            +(localSearch == TSP_GA.NO_LOCAL_SEARCH ? "" : " offspring-ls"),
+                            (double)bytes/GENERATIONS+" bytes/generation");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the children and delta fitness of the operators, called alone
+     * and through whole runs of every pairing of crossover and mutation.
+     */
+    private void operators() throws Exception {
+        List<String> names = new ArrayList<String>();
+        List<CostMatrix> costs = new ArrayList<CostMatrix>();
+        for(String instance : INSTANCES) {
+            names.add(instance);
+            costs.add(TSP_GA.read(instance));
+        }
+        names.add("asymmetric dense");
+        costs.add(asymmetricDense(ASYMMETRIC_SIZE));
+        names.add("asymmetric sparse");
+        costs.add(asymmetricSparse(ASYMMETRIC_SIZE));
+        int[] crossovers = {TSP_GA.PM_CROSSOVER, TSP_GA.CYCLE_CROSSOVER};
+        int[] mutations = {TSP_GA.EXCHANGE_MUTATION, TSP_GA.INVERSION_MUTATION};
+        for(int c = 0; c < costs.size(); c++) {
+            CostMatrix cost = costs.get(c);
+            TourEvaluator evaluator = new TourEvaluator(cost);
+            TSP_GA ga = new TSP_GA(cost);
+            ga.reseed(new GARandom(SEED));
+            ga.start();
+            SplittableRandom random = new SplittableRandom(SEED);
+            int populationSize = ga.populationSize();
+            int invalid = 0, wrong = 0;
+            for(int t = 0; t < TRIALS; t++) {
+                int parent1 = random.nextInt(populationSize), parent2 = random.nextInt(populationSize);
+                if(t % 2 == 0) {
+                    ga.partiallyMappedCrossover(parent1, parent2, 0, 1);
+                } else {
+                    ga.cycleCrossover(parent1, parent2, 0, 1);
+                }
+                invalid += (valid(ga.children(), 0) ? 0 : 1)+(valid(ga.children(), 1) ? 0 : 1);
+                int fitness = t % 2 == 0 ? ga.exchangeMutation(parent1, 2) : ga.inversionMutation(parent1, 2);
+                invalid += valid(ga.children(), 2) ? 0 : 1;
+                wrong += fitness == evaluator.cost(ga.children(), 2) ? 0 : 1;
+            }
+            report(invalid == 0 && wrong == 0, "operators", names.get(c)+" single calls",
+                invalid+" invalid children, "+wrong+" wrong delta fitness of "+TRIALS);
+            for(int crossover : crossovers) {
+                for(int mutation : mutations) {
+                    ga = new TSP_GA(cost);
+                    GAConfig config = ga.getConfig();
+                    config.setOperators(TSP_GA.TOURNAMENT_SELECT, crossover, mutation);
+                    config.setDuplicates(TSP_GA.REUSE_DUPLICATES); // Fitness also carried by tour hash
+                    ga.setConfig(config);
+                    ga.reseed(new GARandom(SEED));
+                    ga.start();
+                    for(int g = 0; g < RUN_GENERATIONS; g++) {
+                        ga.step();
+                    }
+                    invalid = 0;
+                    wrong = 0;
+                    for(int i = 0; i < ga.populationSize(); i++) {
+                        invalid += valid(ga.parents(), i) ? 0 : 1;
+                        wrong += ga.fitness(i) == evaluator.cost(ga.parents(), i) ? 0 : 1;
+                    }
+                    report(invalid == 0 && wrong == 0, "operators", names.get(c)
+                        +(crossover == TSP_GA.PM_CROSSOVER ? " pmx" : " cycle")
+                        +(mutation == TSP_GA.EXCHANGE_MUTATION ? " exchange" : " inversion"),
+                        invalid+" invalid, "+wrong+" wrong carried fitness of "+ga.populationSize());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the checkpoint left by each run is of its last generation,
+     * over runs of different lengths.
+     */
+    private void checkpoint() throws Exception {
+        Path file = Files.createTempFile("selfcheck-", ".ckpt");
+        file.toFile().deleteOnExit();
+        for(String instance : INSTANCES) {
+            CostMatrix cost = TSP_GA.read(instance);
+            int stale = 0;
+            for(int run = 0; run < CHECKPOINT_RUNS; run++) {
+                TSP_GA ga = new TSP_GA(cost);
+                GAConfig config = ga.getConfig();
+                config.setGenerations(100+37*run);
+                ga.setConfig(config);
+                ga.reseed(new GARandom(SEED+run));
+                ga.setCheckpoint(file.toString(), 0);
+                ga.solve();
+                Checkpoint snapshot = Checkpoint.load(file.toString());
+                if(snapshot.generation != ga.generationsRun() || !ga.stopped().equals(snapshot.stopped)) {
+                    stale++;
+                }
+                ga.setCheckpoint(null, 0);
+            }
+            report(stale == 0, "checkpoint", instance, stale+" stale of "+CHECKPOINT_RUNS+" runs");
+        }
+        Files.deleteIfExists(file.resolveSibling(file.getFileName()+".tmp"));
+    }
+
+    /**
+     * @return True if an individual visits every city once, starting with city 0.
+     */
+    private static boolean valid(Population tours, int individual) {
+        int[] route = new int[tours.size()];
+        tours.read(individual, route);
+        boolean[] seen = new boolean[route.length];
+        for(int city : route) {
+            if(city < 0 || city >= route.length || seen[city]) {
+                return false;
+            }
+            seen[city] = true;
+        }
+        return route[0] == 0;
+    }
+
+    /**
+     * @return A random TSP with a full matrix of costs that differ by direction.
+     */
+    private static CostMatrix asymmetricDense(int size) {
+        SplittableRandom random = new SplittableRandom(SEED+size);
+        int[][] cost = new int[size][size];
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                cost[i][j] = i == j ? 0 : 1+random.nextInt(1000);
+            }
+        }
+        return PackedCostMatrix.of(new DenseCostMatrix(cost));
+    }
+
+    /**
+     * @return A random sparse TSP of directed edges: a cycle through every
+     *         city, so some route has no missing edge, and a few random edges
+     *         from each city.
+     */
+    private static CostMatrix asymmetricSparse(int size) {
+        SplittableRandom random = new SplittableRandom(SEED-size);
+        int count = size*(1+SPARSE_DEGREE);
+        int[] from = new int[count], to = new int[count], cost = new int[count];
+        int edges = 0;
+        for(int i = 0; i < size; i++) {
+            from[edges] = i;
+            to[edges] = (i+1) % size;
+            cost[edges++] = 1+random.nextInt(100);
+            for(int d = 0; d < SPARSE_DEGREE; d++) {
+                from[edges] = i;
+                to[edges] = random.nextInt(size);
+                cost[edges++] = 1+random.nextInt(1000);
+            }
+        }
+        return new SparseCostMatrix(size, from, to, cost, edges, true);
+    }
+
+    /**
+     * Prints the result of a case, counting it if it failed.
+     * @param passed Whether the case passed.
+     * @param check The name of the check.
+     * @param name The case.
+     * @param detail What was measured.
+     */
+    private void report(boolean passed, String check, String name, String detail) {
+        if(!passed) {
+            failures++;
+        }
+        System.out.println(String.format("%-4s %-12s %-44s %s", passed ? "ok" : "FAIL", check, name, detail));
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long running batch mode, which solves TSP jobs sent over a local socket or
+ * dropped in a watched directory, all in one JVM, so jobs after the first
+ * skip JVM start up and JIT warm up, and TSPs already read are taken from an
+ * InstanceCache rather than parsed again.
+ * A job is one line of settings as name=value, separated by spaces: those of
+ * GAConfig.set(), plus
+ *  - file: the TSP file, required.
+ *  - budget: the time the run may take in ms. Sets timeLimit and, unless
+ *    generations is also given, lifts the generations limit.
+ *  - seed: the random seed, for a repeatable run.
+ *  - id: returned with the result, otherwise the job is numbered.
+ * e.g. "id=a file=dantzig.tsp budget=2000 population=200 localSearch=offspring"
+ * The result of a job is one line of JSON: its id, file, status "ok", the
+ * cost, size and tour (TSPLIB city numbers, from 1), the generations,
+ * restarts and why the run stopped, and the time spent queued, hashing and
+ * reading the file (0 when cached) and solving, in ms. A job that cannot run
+ * has the status "error", or "rejected" if the queue is full, and an error
+ * message.
+ * Jobs run on a fixed pool of worker threads with a bounded queue. On the
+ * socket (localhost only) a client writes jobs one per line and gets each
+ * result back as a line when it is done, in the order they finish; the
+ * connection is closed once every job sent before the end of its input is
+ * done. In the directory, each file name.job is read when it appears (write it
+ * under another name and rename it, so it is not read half written); the
+ * results of its jobs are written in order to name.json, and name.job is then
+ * deleted.
+ *
+ * Usage: java SolveService [-p port] [-d directory] [-w workers] [-q queue]
+ *                          [-c cacheMB]
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class SolveService
+{
+    // ########## CONSTANTS ##########
+    private static final int PORT = 7420; // Default socket port
+    private static final int QUEUE = 256; // Default most jobs waiting for a worker
+    private static final long CACHE_MB = 1024; // Default cache capacity
+    private static final String JOB_SUFFIX = ".job";
+    private static final String RESULT_SUFFIX = ".json";
+    private static final long POLL_INTERVAL = 500; // Time between checks for close(), in ms
+
+    // ########## VARIABLES ##########
+    private final ThreadPoolExecutor workers; // Run the jobs
+    private final ExecutorService listeners = Executors.newCachedThreadPool(); // Socket connections and the directory watcher
+    private final InstanceCache cache; // TSPs already read
+    private final AtomicLong jobs = new AtomicLong(); // Jobs submitted, numbers those without an id
+    private final Set<Path> claimed = ConcurrentHashMap.newKeySet(); // Job files being run
+    private volatile boolean running = true;
+    private ServerSocket server; // Null if not listening
+    private WatchService watcher; // Null if not watching
+
+    /**
+     * A parsed job.
+     */
+    private static class Job
+    {
+        private String id;
+        private String file;
+        private GAConfig config = new GAConfig();
+        private boolean seeded; // Whether seed is set
+        private long seed;
+    }
+
+    /**
+     * @param threads The number of jobs run at once.
+     * @param queue The most jobs waiting for a worker, more are rejected.
+     * @param cacheBytes The most bytes of TSPs held, see InstanceCache.
+     */
+    public SolveService(int threads, int queue, long cacheBytes) {
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queue));
+        cache = new InstanceCache(cacheBytes);
+    }
+
+    /**
+     * Starts the service.
+     * @param args Options, see the class comment. Without -p or -d it listens
+     *             on the default port.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = -1, threads = Runtime.getRuntime().availableProcessors(), queue = QUEUE;
+        long cacheMB = CACHE_MB;
+        String directory = null;
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-d":
+                    directory = args[++i];
+                    break;
+                case "-w":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-q":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                case "-c":
+                    cacheMB = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        SolveService service = new SolveService(threads, queue, cacheMB << 20);
+        if(port >= 0 || directory == null) {
+            service.listen(port >= 0 ? port : PORT);
+            System.out.println("Listening on port "+service.port());
+        }
+        if(directory != null) {
+            service.watch(directory);
+            System.out.println("Watching "+directory+" for *"+JOB_SUFFIX+" files");
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+    }
+
+    /**
+     * Queues a job.
+     * @param line The job, see the class comment.
+     * @return The result line, once the job is done.
+     */
+    public CompletableFuture<String> submit(String line) {
+        long submitted = System.nanoTime();
+        Job job = new Job();
+        job.id = Long.toString(jobs.incrementAndGet());
+        try {
+            parse(line, job);
+        }
+        catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(failure(job.id, job.file, "error", e.getMessage()));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> solve(job, submitted), workers);
+        }
+        catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(failure(job.id, job.file, "rejected", "Queue full"));
+        }
+    }
+
+    /**
+     * Reads a job.
+     * @param line The job, see the class comment.
+     * @param job Set to the job, as far as it was read if it is not valid.
+     * @throws IllegalArgumentException If a setting is not valid.
+     */
+    private static void parse(String line, Job job) {
+        boolean generations = false;
+        long budget = 0;
+        for(String setting : line.trim().split("\\s+")) {
+            int split = setting.indexOf('=');
+            if(split < 0) {
+                throw new IllegalArgumentException("Invalid setting: "+setting);
+            }
+            String name = setting.substring(0, split), value = setting.substring(split+1);
+            try {
+                switch(name) {
+                    case "id":
+                        job.id = value;
+                        break;
+                    case "file":
+                        job.file = value;
+                        break;
+                    case "budget":
+                        budget = Long.parseLong(value);
+                        job.config.setTimeLimit(budget);
+                        break;
+                    case "seed":
+                        job.seed = Long.parseLong(value);
+                        job.seeded = true;
+                        break;
+                    default:
+                        job.config.set(name, value);
+                        generations |= name.equals("generations");
+                }
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid "+name+": "+value, e);
+            }
+        }
+        if(job.file == null) {
+            throw new IllegalArgumentException("No file given");
+        }
+        if(budget > 0 && !generations) {
+            job.config.setGenerations(Integer.MAX_VALUE); // Run for the budget
+        }
+    }
+
+    /**
+     * Runs a job, on a worker thread.
+     * @param job The job.
+     * @param submitted The System.nanoTime() it was submitted at.
+     * @return The result line.
+     */
+    private String solve(Job job, long submitted) {
+        long startTime = System.nanoTime();
+        long[] timings = new long[2]; // Hashing and reading, see InstanceCache.get()
+        try {
+            TSP_GA prototype = cache.get(job.file, timings);
+            long loaded = System.nanoTime();
+            TSP_GA ga = prototype.copy(job.config); // Shares the candidate lists of earlier jobs
+            ga.setWorker(workers.getMaximumPoolSize() > 1); // Jobs side by side already fill the cores
+            if(job.seeded) {
+                ga.reseed(new GARandom(job.seed));
+            }
+            int[] tour = ga.solve();
+            long solved = System.nanoTime();
+            StringBuilder result = new StringBuilder(64+tour.length*6);
+            result.append("{\"id\":").append(quote(job.id))
+                .append(",\"file\":").append(quote(job.file))
+                .append(",\"status\":\"ok\",\"cost\":").append(ga.bestFitness())
+                .append(",\"size\":").append(tour.length)
+                .append(",\"tour\":[");
+            for(int i = 0; i < tour.length; i++) {
+                result.append(i == 0 ? "" : ",").append(tour[i]+1);
+            }
+            result.append("],\"generations\":").append(ga.generationsRun())
+                .append(",\"restarts\":").append(ga.restarts())
+                .append(",\"stopped\":").append(quote(ga.stopped()))
+                .append(",\"queueMs\":").append((startTime-submitted)/1e6)
+                .append(",\"hashMs\":").append(timings[0]/1e6)
+                .append(",\"loadMs\":").append(timings[1]/1e6)
+                .append(",\"solveMs\":").append((solved-loaded)/1e6).append('}');
+            return result.toString();
+        }
+        catch (IOException e) {
+            return failure(job.id, job.file, "error", "Could not read file: "+e.getMessage());
+        }
+        catch (RuntimeException e) {
+            return failure(job.id, job.file, "error", e.toString());
+        }
+    }
+
+    /**
+     * @return The result line of a job that did not run.
+     */
+    private static String failure(String id, String file, String status, String error) {
+        return "{\"id\":"+quote(id)+",\"file\":"+quote(file)+",\"status\":"+quote(status)
+            +",\"error\":"+quote(error)+"}";
+    }
+
+    /**
+     * @return A string as a JSON string, or null.
+     */
+    private static String quote(String value) {
+        if(value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length()+2).append('"');
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if(c < ' ') {
+                quoted.append(String.format("\\u%04x", (int)c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Accepts jobs on a socket of the loopback interface.
+     * @param port The port, 0 for any free one.
+     * @throws IOException If the port cannot be opened.
+     */
+    public void listen(int port) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        listeners.execute(() -> {
+            while(running) {
+                try {
+                    Socket socket = server.accept();
+                    listeners.execute(() -> serve(socket));
+                }
+                catch (IOException e) {
+                    if(running) {
+                        System.out.println("Could not accept connection: "+e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The port the service listens on, -1 if it does not.
+     */
+    public int port() {
+        return server == null ? -1 : server.getLocalPort();
+    }
+
+    /**
+     * Runs the jobs of one connection, writing each result as it is done.
+     * @param socket The connection.
+     */
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                    connection.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                    connection.getOutputStream(), StandardCharsets.UTF_8))) {
+            List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+            for(String line = in.readLine(); line != null; line = in.readLine()) {
+                if(!line.isBlank()) {
+                    pending.add(submit(line).thenAccept(result -> reply(out, result)));
+                }
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        }
+        catch (IOException e) {
+            // The client went away, its results are dropped
+        }
+    }
+
+    /**
+     * Writes a result line to a connection, from any thread.
+     */
+    private static void reply(Writer out, String result) {
+        synchronized(out) {
+            try {
+                out.write(result);
+                out.write('\n');
+                out.flush();
+            }
+            catch (IOException e) {
+                // The client went away
+            }
+        }
+    }
+
+    /**
+     * Runs the job files of a directory, those there now and any that appear.
+     * @param directory The directory to watch.
+     * @throws IOException If the directory cannot be watched.
+     */
+    public void watch(String directory) throws IOException {
+        Path path = Paths.get(directory);
+        watcher = path.getFileSystem().newWatchService();
+        path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+        listeners.execute(() -> {
+            scan(path);
+            while(running) {
+                WatchKey key;
+                try {
+                    key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+                if(key == null) {
+                    continue;
+                }
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        scan(path); // Events were lost
+                    }
+                    else {
+                        run(path.resolve((Path)event.context()));
+                    }
+                }
+                key.reset();
+            }
+        });
+    }
+
+    /**
+     * Runs every job file in a directory.
+     */
+    private void scan(Path directory) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*"+JOB_SUFFIX)) {
+            for(Path file : files) {
+                run(file);
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Could not read directory: "+e);
+        }
+    }
+
+    /**
+     * Runs the jobs of a job file, then writes their results and deletes it.
+     * @param file The file, ignored if it is not a job file or already running.
+     */
+    private void run(Path file) {
+        String name = file.getFileName().toString();
+        if(!name.endsWith(JOB_SUFFIX) || !claimed.add(file)) {
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            claimed.remove(file); // Gone already
+            return;
+        }
+        List<CompletableFuture<String>> results = new ArrayList<CompletableFuture<String>>();
+        for(String line : lines) {
+            if(!line.isBlank()) {
+                results.add(submit(line));
+            }
+        }
+        Path output = file.resolveSibling(name.substring(0, name.length()-JOB_SUFFIX.length())+RESULT_SUFFIX);
+        Path temp = file.resolveSibling(output.getFileName()+".tmp");
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            try {
+                List<String> out = new ArrayList<String>(results.size());
+                for(CompletableFuture<String> result : results) {
+                    out.add(result.join());
+                }
+                Files.write(temp, out, StandardCharsets.UTF_8);
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e) {
+                System.out.println("Could not write results: "+output+": "+e);
+            }
+            finally {
+                claimed.remove(file);
+            }
+        });
+    }
+
+    /**
+     * Stops taking jobs, waits for those queued to finish and stops the
+     * threads.
+     */
+    public void close() {
+        running = false;
+        try {
+            if(server != null) {
+                server.close();
+            }
+            if(watcher != null) {
+                watcher.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not close service", e);
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            listeners.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The cache of TSPs.
+     */
+    public InstanceCache cache() {
+        return cache;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * A cost matrix for sparse TSPs, such as those taken from road networks,
+ * where most pairs of cities have no edge between them.
+ * The edges are held in compressed rows: the edges leaving each city are a
+ * run of the shared target and cost arrays, found by the offset of its first
+ * edge, with the targets of a run in order. Memory grows with the number of
+ * edges rather than SIZE^2, and cost() finds an edge by binary search of its
+ * row, in O(log degree).
+ * Edges can be directed (an asymmetric TSP), or undirected, in which case each
+ * is held in the rows of both its cities.
+ * A pair of cities with no edge costs infinite(): more than any route over
+ * edges that exist where that fits in an int, so routes with fewer missing
+ * edges always score better, and otherwise as much as fits, so a route of
+ * SIZE missing edges still fits. Either way it is more than any one edge.
+ * A TSP whose costs are so large that this cannot be, where SIZE times one
+ * more than its dearest edge does not fit in an int, is rejected, as its
+ * routes could overflow the int fitness of the GA and look the best.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class SparseCostMatrix implements CostMatrix
+{
+    // ########## VARIABLES ##########
+    private final int size; // The number of cities
+    private final boolean directed; // Whether each edge only goes one way
+    private final int[] offsets; // The first edge of each city's row, then the number of edges
+    private final int[] targets; // The city each edge goes to, in order within a row
+    private final int[] costs; // The cost of each edge
+    private final int infinite; // The cost of a missing edge
+
+    /**
+     * Builds the rows from a list of edges, in O(SIZE + edges log edges).
+     * Edges from a city to itself are dropped, and of repeated edges the
+     * cheapest is kept.
+     * @param size The number of cities.
+     * @param from The city each edge leaves.
+     * @param to The city each edge goes to.
+     * @param cost The cost of each edge, not negative.
+     * @param count The number of edges in the arrays.
+     * @param directed True if each edge only goes from from to to.
+     * @throws IllegalArgumentException If a route of SIZE edges, each costing
+     *         one more than the dearest edge, would not fit in an int.
+     */
+    public SparseCostMatrix(int size, int[] from, int[] to, int[] cost, int count, boolean directed) {
+        this.size = size;
+        this.directed = directed;
+        int[] rowStart = new int[size+1];
+        for(int e = 0; e < count; e++) {
+            if(from[e] != to[e]) {
+                rowStart[from[e]+1]++;
+                if(!directed) {
+                    rowStart[to[e]+1]++;
+                }
+            }
+        }
+        for(int i = 0; i < size; i++) {
+            rowStart[i+1] += rowStart[i];
+        }
+        // Each edge of a row packed as its target above its cost, so sorting
+        // orders a row by target and a repeated edge cheapest first
+        long[] packed = new long[rowStart[size]];
+        int[] fill = Arrays.copyOf(rowStart, size);
+        for(int e = 0; e < count; e++) {
+            if(from[e] != to[e]) {
+                packed[fill[from[e]]++] = (long)to[e] << 32 | cost[e];
+                if(!directed) {
+                    packed[fill[to[e]]++] = (long)from[e] << 32 | cost[e];
+                }
+            }
+        }
+        offsets = new int[size+1];
+        int[] kept = new int[packed.length], keptCosts = new int[packed.length];
+        int edges = 0, max = 0;
+        for(int i = 0; i < size; i++) {
+            Arrays.sort(packed, rowStart[i], rowStart[i+1]);
+            offsets[i] = edges;
+            for(int e = rowStart[i]; e < rowStart[i+1]; e++) {
+                int target = (int)(packed[e] >>> 32);
+                if(edges > offsets[i] && kept[edges-1] == target) {
+                    continue; // A dearer repeat
+                }
+                kept[edges] = target;
+                keptCosts[edges++] = (int)packed[e];
+                max = Math.max(max, (int)packed[e]);
+            }
+        }
+        offsets[size] = edges;
+        targets = edges == kept.length ? kept : Arrays.copyOf(kept, edges);
+        costs = edges == keptCosts.length ? keptCosts : Arrays.copyOf(keptCosts, edges);
+        if((max+1L)*size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Costs up to "+max+" over "+size
+                +" cities could overflow the cost of a route");
+        }
+        infinite = (int)Math.min((long)max*size+1, Integer.MAX_VALUE/size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cost(int from, int to) {
+        int low = offsets[from], high = offsets[from+1]-1;
+        while(low <= high) {
+            int middle = (low+high) >>> 1;
+            int target = targets[middle];
+            if(target < to) {
+                low = middle+1;
+            }
+            else if(target > to) {
+                high = middle-1;
+            }
+            else {
+                return costs[middle];
+            }
+        }
+        return from == to ? 0 : infinite;
+    }
+
+    public boolean symmetric() {
+        return !directed;
+    }
+
+    /**
+     * @return The cost of travelling between two cities with no edge.
+     */
+    public int infinite() {
+        return infinite;
+    }
+
+    /**
+     * @return The number of edges held, undirected edges counted both ways.
+     */
+    public int edges() {
+        return targets.length;
+    }
+
+    /**
+     * @return The number of bytes used to store the rows.
+     */
+    public long footprint() {
+        return 4L*(offsets.length+targets.length+costs.length);
+    }
+
+    /**
+     * Lists the cheapest edges leaving a city, in O(degree k).
+     * @param city The city.
+     * @param k The most cities to list.
+     * @return The cities its k cheapest edges go to, cheapest first, fewer if
+     *         it has fewer edges.
+     */
+    public int[] neighbours(int city, int k) {
+        int[] list = new int[Math.min(k, offsets[city+1]-offsets[city])];
+        int[] listCosts = new int[list.length];
+        int found = 0;
+        for(int e = offsets[city]; e < offsets[city+1] && list.length > 0; e++) {
+            int c = costs[e];
+            if(found == list.length && c >= listCosts[found-1]) {
+                continue; // Not among the cheapest so far
+            }
+            // Insertion sort into the list
+            int i = found == list.length ? found-1 : found++;
+            while(i > 0 && listCosts[i-1] > c) {
+                listCosts[i] = listCosts[i-1];
+                list[i] = list[i-1];
+                i--;
+            }
+            listCosts[i] = c;
+            list[i] = targets[e];
+        }
+        return list;
+    }
+}
@@ -0,0 +1,409 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for TSPLIB files, plain or gzipped.
+ * The file is read through a channel into one reusable buffer, and numbers are
+ * parsed straight from its bytes, so no String is made per value. Values are
+ * placed using DIMENSION and the declared EDGE_WEIGHT_FORMAT rather than by
+ * looking at the values themselves.
+ * Supported: EXPLICIT weights in FULL_MATRIX, UPPER_ROW, UPPER_DIAG_ROW,
+ * LOWER_ROW or LOWER_DIAG_ROW format, and NODE_COORD_SECTION instances, see
+ * CoordinateCostMatrix. A TYPE: ATSP instance is read as directed costs, from
+ * a FULL_MATRIX or an edge list.
+ * Sparse instances list their edges in an EDGE_DATA_SECTION with
+ * EDGE_DATA_FORMAT: EDGE_LIST, one "from to weight" line per edge (TSPLIB's
+ * edge lists with a weight added) ending with -1, and are read into a
+ * SparseCostMatrix; pairs not listed have no edge.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class TSPLIBReader
+{
+    // ########## CONSTANTS ##########
+    private static final int FULL_MATRIX = 0;
+    private static final int UPPER_ROW = 1;
+    private static final int UPPER_DIAG_ROW = 2;
+    private static final int LOWER_ROW = 3;
+    private static final int LOWER_DIAG_ROW = 4;
+    private static final int BUFFER_SIZE = 1 << 16; // Bytes read from the channel at a time
+    private static final double[] POWERS = { // Powers of 10 that are exact doubles
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    // ########## VARIABLES ##########
+    private final String filename; // The file being read, for error messages
+    private final ReadableByteChannel channel; // The source of the bytes
+    private final byte[] buffer = new byte[BUFFER_SIZE]; // Bytes read but not yet parsed
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    private int position; // Next byte to parse
+    private int limit; // End of the bytes read
+    private byte[] token = new byte[64]; // The current number, for the slow double path
+    private int size = -1; // DIMENSION
+    private int format = -1; // EDGE_WEIGHT_FORMAT
+    private int coordType = -1; // Distance function, -1 for EXPLICIT
+    private boolean directed; // TYPE: ATSP, costs differ by direction
+    private boolean edgeList; // EDGE_DATA_FORMAT: EDGE_LIST
+    private final int cacheBits; // Cost cache size for coordinate instances
+
+    /**
+     * @param filename The file to read.
+     * @param channel The channel to read it from.
+     * @param cacheBits The log 2 of the cost cache size for coordinate instances.
+     */
+    private TSPLIBReader(String filename, ReadableByteChannel channel, int cacheBits) {
+        this.filename = filename;
+        this.channel = channel;
+        this.cacheBits = cacheBits;
+    }
+
+    /**
+     * Reads a TSPLIB file. Gzipped files are recognised by their content.
+     * @param filename The file to read.
+     * @param cacheBits The log 2 of the cost cache size for coordinate instances,
+     *                  see CoordinateCostMatrix.
+     * @return The cost matrix of the instance.
+     * @throws IOException If the file cannot be read.
+     */
+    public static CostMatrix read(String filename, int cacheBits) throws IOException {
+        boolean gzip;
+        try (InputStream in = new FileInputStream(filename)) {
+            gzip = in.read() == 0x1f && in.read() == 0x8b;
+        }
+        ReadableByteChannel channel = gzip
+            ? Channels.newChannel(new GZIPInputStream(new FileInputStream(filename), BUFFER_SIZE))
+            : FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            return new TSPLIBReader(filename, channel, cacheBits).read();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the header lines, then the first data section.
+     * @return The cost matrix of the instance.
+     */
+    private CostMatrix read() throws IOException {
+        String line;
+        while((line = readLine()) != null) {
+            line = line.trim();
+            int colon = line.indexOf(':');
+            String key = (colon == -1 ? line : line.substring(0, colon)).trim();
+            String value = colon == -1 ? "" : line.substring(colon+1).trim();
+            switch(key) {
+                case "DIMENSION":
+                    size = Integer.parseInt(value);
+                    break;
+                case "TYPE":
+                    directed = value.equals("ATSP");
+                    break;
+                case "EDGE_WEIGHT_TYPE":
+                    coordType = CoordinateCostMatrix.type(value);
+                    if(coordType == -1 && !value.equals("EXPLICIT")) {
+                        throw new IOException("Invalid EDGE_WEIGHT_TYPE: " + value);
+                    }
+                    break;
+                case "EDGE_WEIGHT_FORMAT":
+                    format = format(value);
+                    break;
+                case "EDGE_DATA_FORMAT":
+                    edgeList = value.equals("EDGE_LIST");
+                    if(!edgeList) {
+                        throw new IOException("Invalid EDGE_DATA_FORMAT: " + value);
+                    }
+                    break;
+                case "EDGE_WEIGHT_SECTION":
+                    return readWeights();
+                case "NODE_COORD_SECTION":
+                    return readCoords();
+                case "EDGE_DATA_SECTION":
+                    return readEdges();
+                case "EOF":
+                case "DISPLAY_DATA_SECTION":
+                    throw new IOException("No EDGE_WEIGHT_SECTION, NODE_COORD_SECTION or EDGE_DATA_SECTION: " + filename);
+                default:
+                    break; // NAME, TYPE, COMMENT, ... are not needed
+            }
+        }
+        throw new IOException("Unexpected end of file: " + filename);
+    }
+
+    /**
+     * Reads an EDGE_WEIGHT_SECTION into a packed matrix, directed for an ATSP.
+     * @return The cost matrix.
+     */
+    private CostMatrix readWeights() throws IOException {
+        if(size < 2 || coordType != -1) {
+            throw new IOException("EDGE_WEIGHT_SECTION needs DIMENSION and EXPLICIT weights: " + filename);
+        }
+        if(format == -1) {
+            throw new IOException("Missing EDGE_WEIGHT_FORMAT: " + filename);
+        }
+        if(directed && format != FULL_MATRIX) {
+            throw new IOException("An ATSP needs a FULL_MATRIX: " + filename);
+        }
+        // Start narrow and widen when a larger value is found
+        PackedCostMatrix matrix = new PackedCostMatrix(size, 0, directed);
+        int max = 0;
+        for(int i = 0; i < size; i++) {
+            // The columns of row i present in this format
+            int first = format == FULL_MATRIX || format == LOWER_ROW || format == LOWER_DIAG_ROW ? 0
+                : format == UPPER_ROW ? i+1 : i;
+            int last = format == LOWER_ROW ? i-1 : format == LOWER_DIAG_ROW ? i : size-1;
+            for(int j = first; j <= last; j++) {
+                long value = readLong();
+                if(value < 0 || value > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid weight "+value+" in row "+(i+1)+": " + filename);
+                }
+                if(value > max) {
+                    max = (int)value;
+                    matrix = matrix.widen(max);
+                }
+                if(directed || format != FULL_MATRIX || j <= i) { // The lower triangle holds both
+                    matrix.set(i, j, (int)value);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Reads an EDGE_DATA_SECTION edge list into a sparse matrix. The edges
+     * are gathered in arrays that double when full, so memory grows with the
+     * number of edges.
+     * @return The cost matrix.
+     */
+    private CostMatrix readEdges() throws IOException {
+        if(size < 2 || coordType != -1 || !edgeList) {
+            throw new IOException("EDGE_DATA_SECTION needs DIMENSION, EXPLICIT weights and an EDGE_LIST: " + filename);
+        }
+        int[] from = new int[size], to = new int[size], cost = new int[size];
+        int count = 0;
+        for(long city = readLong(); city != -1; city = readLong()) {
+            long other = readLong(), value = readLong();
+            if(city < 1 || city > size || other < 1 || other > size) {
+                throw new IOException("Invalid edge "+city+" "+other+": " + filename);
+            }
+            if(value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid weight "+value+" of edge "+city+" "+other+": " + filename);
+            }
+            if(count == from.length) {
+                from = Arrays.copyOf(from, count*2);
+                to = Arrays.copyOf(to, count*2);
+                cost = Arrays.copyOf(cost, count*2);
+            }
+            from[count] = (int)city-1; // Cities are numbered from 1
+            to[count] = (int)other-1;
+            cost[count++] = (int)value;
+        }
+        try {
+            return new SparseCostMatrix(size, from, to, cost, count, directed);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage() + ": " + filename, e);
+        }
+    }
+
+    /**
+     * Reads a NODE_COORD_SECTION.
+     * @return The cost matrix.
+     */
+    private CostMatrix readCoords() throws IOException {
+        if(size < 2 || coordType == -1) {
+            throw new IOException("NODE_COORD_SECTION needs DIMENSION and a coordinate EDGE_WEIGHT_TYPE: " + filename);
+        }
+        double[] x = new double[size], y = new double[size];
+        for(int i = 0; i < size; i++) {
+            long city = readLong()-1; // Cities are numbered from 1
+            if(city < 0 || city >= size) {
+                throw new IOException("Invalid city "+(city+1)+": " + filename);
+            }
+            x[(int)city] = readDouble();
+            y[(int)city] = readDouble();
+        }
+        return new CoordinateCostMatrix(coordType, x, y, cacheBits);
+    }
+
+    /**
+     * @param name A TSPLIB EDGE_WEIGHT_FORMAT.
+     * @return The matching format.
+     */
+    private int format(String name) throws IOException {
+        switch(name) {
+            case "FULL_MATRIX":
+                return FULL_MATRIX;
+            case "UPPER_ROW":
+                return UPPER_ROW;
+            case "UPPER_DIAG_ROW":
+                return UPPER_DIAG_ROW;
+            case "LOWER_ROW":
+                return LOWER_ROW;
+            case "LOWER_DIAG_ROW":
+                return LOWER_DIAG_ROW;
+            default:
+                throw new IOException("Invalid EDGE_WEIGHT_FORMAT: " + name);
+        }
+    }
+
+    /**
+     * @return The next byte, or -1 at the end of the file.
+     */
+    private int next() throws IOException {
+        if(position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * @return The next byte without consuming it, or -1 at the end of the file.
+     */
+    private int peek() throws IOException {
+        if(position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Reads more bytes into the buffer.
+     * @return False at the end of the file.
+     */
+    private boolean fill() throws IOException {
+        wrapped.clear();
+        int read;
+        do {
+            read = channel.read(wrapped);
+        } while(read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Reads a header line. Header lines are few, so these do make Strings.
+     * @return The line, or null at the end of the file.
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c = next();
+        if(c == -1) {
+            return null;
+        }
+        while(c != -1 && c != '\n') {
+            if(c != '\r') {
+                line.append((char)c);
+            }
+            c = next();
+        }
+        return line.toString();
+    }
+
+    /**
+     * Skips whitespace.
+     * @return The first byte that is not whitespace, not consumed.
+     */
+    private int skipSpace() throws IOException {
+        int c = peek();
+        while(c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            position++;
+            c = peek();
+        }
+        if(c == -1) {
+            throw new IOException("Unexpected end of file: " + filename);
+        }
+        return c;
+    }
+
+    /**
+     * @return The next whole number.
+     */
+    private long readLong() throws IOException {
+        int c = skipSpace();
+        boolean negative = c == '-';
+        if(c == '-' || c == '+') {
+            position++;
+            c = peek();
+        }
+        if(c < '0' || c > '9') {
+            throw new IOException("Expected a number but found '"+(char)c+"': " + filename);
+        }
+        long value = 0;
+        while(c >= '0' && c <= '9') {
+            value = value*10+(c-'0');
+            position++;
+            c = peek();
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a decimal number. Numbers with few enough digits are exact as
+     * mantissa / 10^digits; any other falls back to Double.parseDouble.
+     * @return The next number.
+     */
+    private double readDouble() throws IOException {
+        int c = skipSpace();
+        int length = 0;
+        long mantissa = 0;
+        int digits = 0, exponent = 0;
+        boolean negative = false, fraction = false;
+        while(c != -1 && c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+            if(length == token.length) {
+                token = Arrays.copyOf(token, length*2);
+            }
+            token[length++] = (byte)c;
+            if(c >= '0' && c <= '9') {
+                if(digits < 18) {
+                    mantissa = mantissa*10+(c-'0');
+                    if(fraction) {
+                        exponent--;
+                    }
+                }
+                else if(!fraction) {
+                    exponent++;
+                }
+                if(mantissa != 0 || c != '0') {
+                    digits++;
+                }
+            }
+            else if(c == '-' && length == 1) {
+                negative = true;
+            }
+            else if(c == '.' && !fraction) {
+                fraction = true;
+            }
+            else if(c != '+' || length != 1) {
+                digits = Integer.MAX_VALUE; // Exponent or anything else, use the slow path
+            }
+            position++;
+            c = peek();
+        }
+        if(length == 0) {
+            throw new IOException("Expected a number: " + filename);
+        }
+        if(digits <= 15 && exponent >= -22 && exponent <= 0) {
+            double value = mantissa/POWERS[-exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(token, 0, length, StandardCharsets.US_ASCII));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid number in " + filename, e);
+        }
+    }
+}
@@ -1,8 +1,11 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Random;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple GA for the Travelling Salesman Problem.
@@ -12,7 +15,8 @@ import java.util.ArrayList;
  * Assignment task completion:
  * Task 1:
  *  - Initialisation of individuals: see initialise().
- *  - Fitness function: see evaluate().
+ *  - Fitness function: see evaluate(). Mutated children are scored from the
+ *    change in cost of the edges they break and add, see inversionDelta().
  *  - Mutation operator: see inversionMutation().
  *  - Crossover operator: see cycleCrossover().
  *  - Selection method: see tournamentSelect().
@@ -25,34 +29,123 @@ import java.util.ArrayList;
  *  - Alternative selection method: see rouletteSelect();
  *  Task 3: see included word document.
  * 
+ * The settings of a run (population size, generations, operators, ...) are
+ * held in a GAConfig, which can be changed at run time with setConfig(); the
+ * operators are SelectionOperator, CrossoverOperator and MutationOperator
+ * strategies, so others can be plugged in. ParameterSweep tunes the settings.
+ * A run can stop early, or restart keeping its elites, on a time limit, a
+ * target, stagnation or low diversity, see GAConfig and solve().
+ * Each individual can carry a hash of its edge set (see TourHash), kept up to
+ * date by the mutations, so duplicate tours reuse a known fitness or are
+ * rejected, and the unique tours of each generation are counted.
+ * Part of the first population can be seeded with nearest neighbour, greedy
+ * edge, space filling curve or random insertion tours, see Seeding and
+ * GAConfig; the rest are random.
+ * Routes are scored by a TourEvaluator, which can sum edge costs with the
+ * Java Vector API, see VectorTourEvaluator.
+ * The routes of a generation are held in one flat Population buffer, read
+ * and written by the operators at offsets.
+ * Per generation metrics can be recorded with setMetrics(), see GAMetrics.
+ * Long runs can be checkpointed with setCheckpoint() and continued exactly 
+ * where they stopped with resume(), see Checkpoint.
+ * Batch runs can be spread over every core with runForParallel() and
+ * runUntilParallel(). Each worker owns its own population and random generator
+ * and only shares the (read only) cost matrix.
+ * An optional memetic stage improves offspring or the elite with 2-opt and
+ * Or-opt moves, see setLocalSearch() and LocalSearch.
+ * A single hard TSP can be spread over several cores as islands that exchange
+ * their best routes, see runIslands() and IslandModel.
+ * Many TSPs can be solved in one long running JVM, sharing the TSPs read, by
+ * SolveService.
+ * Asymmetric TSPs (costs that differ by direction) and sparse TSPs (edges
+ * listed rather than a full matrix, see SparseCostMatrix) are supported: the
+ * mutations then score the reversal of a section from every edge it turns,
+ * and tour hashes are directed.
+ * 
  * @author Matthew Mansell 
  * @version v2.0
  */
 public class TSP_GA
 {
     // ########## CONSTANTS ##########
-    private static final int TOURNAMENT_SELECT = 0;
-    private static final int ROULETTE_SELECT = 1;
-    private static final int EXCHANGE_MUTATION = 0;
-    private static final int INVERSION_MUTATION = 1;
-    private static final int PM_CROSSOVER = 0;
-    private static final int CYCLE_CROSSOVER = 1;
-    private static final int SELECTION_METHOD = TOURNAMENT_SELECT; // The selection method
-    private static final int MUTATION_METHOD = INVERSION_MUTATION; 
-    private static final int CROSSOVER_METHOD = CYCLE_CROSSOVER;
-    private static final int POPULATION_SIZE = 150; // The population size
-    private static final int GENERATIONS = 5000; // The number of generations
-    private static final int TOURNAMENT_SIZE = 5; // The tournament size
-    private static final int MUTATION_CHANCE = 5; // Mutation percentage change
+    public static final int TOURNAMENT_SELECT = 0;
+    public static final int ROULETTE_SELECT = 1;
+    public static final int EXCHANGE_MUTATION = 0;
+    public static final int INVERSION_MUTATION = 1;
+    public static final int PM_CROSSOVER = 0;
+    public static final int CYCLE_CROSSOVER = 1;
+    public static final int NO_LOCAL_SEARCH = 0;
+    public static final int LOCAL_SEARCH_OFFSPRING = 1;
+    public static final int LOCAL_SEARCH_ELITE = 2;
+    public static final int NO_TOUR_HASH = 0;
+    public static final int REUSE_DUPLICATES = 1;
+    public static final int REJECT_DUPLICATES = 2;
+    public static final int SCALAR_EVALUATION = 0;
+    public static final int VECTOR_EVALUATION = 1;
+    private static final int NEIGHBOURS = 8; // Candidate list length for local search
+    private static final int DIVERSITY_SAMPLES = 8; // Individuals compared with the best, see diversity()
+    private static final int DIVERSITY_INTERVAL = 10; // Generations between diversity floor checks
+    private static final int RESTART_WINDOW = 500; // Stagnation before runUntil() restarts, if not set
+    private static final int RESTART_ELITES = 5; // Individuals kept by runUntil() restarts, if not set
+    private static final int DUPLICATE_RETRIES = 3; // Times a duplicate child is bred again
+    private static final int COORD_CACHE_BITS = 16; // Log 2 of cached costs for coordinate TSPs, 0 for none
     
     // ########## VARIABLES ##########
     private int SIZE; // The number of cities of the TSP instance.
-    private int[][] COST; // TSP cost matrix
-    private Random random = new Random(); // Accessible random generator
-    private int[][] population; // Current population
-    private int[] fitness = new int[POPULATION_SIZE]; // Individuals fitness
+    private CostMatrix COST; // TSP cost matrix
+    private boolean worker; // Runs side by side with others on a pool, so starts no threads of its own
+    private boolean symmetric; // Whether COST is the same both ways round
+    private GARandom random = new GARandom(); // Accessible random generator
+    private Population population; // Current population
+    private Population nextPopulation; // Population being generated, swapped with population
+    private int populationSize; // The size of population, fixed for a run
+    private int[] fitness; // Individuals fitness
+    private int[] nextFitness; // Fitness of nextPopulation
+    private double[] roulette; // Cumulative roulette wheel
+    private int[] position; // Crossover scratch space, the position of each city
+    private int[] route; // Scratch route, for local search
     private int bestResult; //Store for best 15result
     private int[][] childrenTest;
+    private int runIndex; // Index of the current run within a parallel batch
+    private AtomicInteger cutoff; // Runs after this index are abandoned (parallel only)
+    private GAConfig config = new GAConfig(); // Settings of this instance
+    private int[][] neighbours; // Candidate lists, shared with workers
+    private LocalSearch localSearch; // Local search scratch space
+    private int effortLeft; // Cities local search may still look at this generation
+    private long localGain; // Cost removed by local search this run
+    private long variationGain; // Cost removed by crossover and mutation this run
+    private long localTime; // Time spent in local search this run, in ns
+    private GAMetrics metrics; // Per generation metrics, null when off
+    private long clock; // Last reading of System.nanoTime() when timing, see lap()
+    private int generationsRun; // Generations of the last run
+    private int restarts; // Restarts of the last run
+    private String stopped; // Why the last run stopped
+    private int[] next, previous; // Neighbours of each city in the best route, see diversity()
+    private TourHash hasher; // Edge hashing, shared with workers
+    private Seeding seeding; // Heuristic tour builder, shared with workers
+    private TourEvaluator evaluator; // Scores routes, see tourCost()
+    private int evaluation; // The GAConfig evaluation the evaluator was made for
+    private boolean hashing; // Whether this run hashes tours
+    private long[] hash; // Tour hash of each individual
+    private long[] nextHash; // Tour hash of nextPopulation
+    private long childHash; // Hash of the last child of a built in mutation
+    private boolean childHashed; // Whether childHash is of the last child
+    // Tours of the last and current generation, by hash. An entry holds a tour 
+    // of the last generation if its stamp is tableStamp-1, of this one if it is
+    // tableStamp, and is empty if older.
+    private long[] tableHash;
+    private int[] tableFitness;
+    private int[] tableStamps;
+    private int tableStamp;
+    private int unique; // Unique tours of the last generation
+    private long reused; // Evaluations saved by reusing the fitness of duplicates this run
+    private int generation; // Generation of the current run
+    private int bestSoFar; // Best fitness of the current run
+    private int improved; // Generation of the last improvement or restart
+    private long elapsed; // Time taken by the current run before it was resumed, in ns
+    private Checkpoint checkpoint; // Snapshots of runs, null when off
+    private long checkpointInterval; // Time between snapshots, in ns
+    private long checkpointTime; // System.nanoTime() of the last snapshot
     
     /**
      * @param tsbFile An initial tsb file to be loaded.
@@ -61,26 +154,586 @@ public class TSP_GA
         load(tsbFile);
     }
     
+    /**
+     * Creates a GA for a TSP that has already been read, see read(), without
+     * printing.
+     * @param cost The TSP costs, which may be shared with other instances.
+     */
+    public TSP_GA(CostMatrix cost) {
+        use(cost);
+    }
+    
+    /**
+     * Creates a worker sharing the loaded TSP and operators of another instance.
+     * The cost matrix is never written after loading, so it is safe to share.
+     * @param source The instance to share the TSP with.
+     */
+    TSP_GA(TSP_GA source) {
+        SIZE = source.SIZE;
+        COST = source.COST;
+        symmetric = source.symmetric;
+        worker = true; // Batch and island workers already fill the cores
+        config = new GAConfig(source.config);
+        neighbours = source.neighbours;
+        hasher = source.hasher;
+        seeding = source.seeding;
+        evaluator = source.evaluator.copy(); // Shares a flattened matrix
+        evaluation = source.evaluation;
+    }
+    
+    /**
+     * Creates a worker for a run with a config, as the copy constructor does, 
+     * first building here whatever of the candidate lists, tour hasher and 
+     * seeding the config needs and this instance does not have yet, so every 
+     * later copy shares them too. One instance can so be kept per TSP as a 
+     * prototype of the runs on it, see InstanceCache, and the O(SIZE^2 k) 
+     * candidate lists are built once rather than once per run. Safe to call 
+     * from several threads at once.
+     * @param config The settings of the run.
+     * @return The worker, with the config set.
+     */
+    synchronized TSP_GA copy(GAConfig config) {
+        boolean seeded = false, needsNeighbours = config.localSearch() != NO_LOCAL_SEARCH;
+        for(int m = 0; m < Seeding.METHODS; m++) {
+            seeded |= config.seeding(m) > 0;
+            needsNeighbours |= config.seeding(m) > 0 && Seeding.needsNeighbours(m, COST);
+        }
+        if(needsNeighbours && neighbours == null) {
+            neighbours = LocalSearch.nearestNeighbours(COST, NEIGHBOURS);
+            seeding = null; // Made without candidate lists
+        }
+        if(seeded && seeding == null) {
+            seeding = new Seeding(COST, neighbours);
+        }
+        if(config.duplicates() != NO_TOUR_HASH && hasher == null) {
+            hasher = new TourHash(SIZE, !symmetric);
+        }
+        TSP_GA worker = new TSP_GA(this);
+        worker.setConfig(config);
+        return worker;
+    }
+    
+    /**
+     * Sets all the settings of this instance. The config is copied, and takes
+     * effect from the next run.
+     * @param config The settings to use.
+     */
+    public void setConfig(GAConfig config) {
+        this.config = new GAConfig(config);
+        if(this.config.localSearch() != NO_LOCAL_SEARCH && neighbours == null) {
+            neighbours = LocalSearch.nearestNeighbours(COST, NEIGHBOURS);
+        }
+    }
+    
+    /**
+     * Records per generation metrics from the next run on. Workers made for
+     * parallel batches or islands do not share them.
+     * @param metrics The metrics to record to, or null to stop recording.
+     */
+    public void setMetrics(GAMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Takes snapshots of runs from the next run on, at most one per interval 
+     * and one when a run stops, so they can be continued by resume(). 
+     * Snapshots are written in the background, see Checkpoint. Workers made for
+     * parallel batches or islands do not take them. A run with a custom 
+     * operator must have it registered by name, see GAConfig.restorable(), or 
+     * it throws IllegalStateException when it starts.
+     * @param filename The checkpoint file, or null to stop taking snapshots.
+     * @param interval The least time between snapshots, in ms.
+     */
+    public void setCheckpoint(String filename, long interval) {
+        if(checkpoint != null) {
+            checkpoint.close();
+        }
+        checkpoint = filename == null ? null : new Checkpoint(filename);
+        checkpointInterval = interval*1000000L;
+    }
+    
+    /**
+     * @return A copy of the settings of this instance.
+     */
+    public GAConfig getConfig() {
+        return new GAConfig(config);
+    }
+    
+    /**
+     * Sets the operators used by this instance, see GAConfig.setOperators().
+     * @param selection TOURNAMENT_SELECT or ROULETTE_SELECT.
+     * @param crossover CYCLE_CROSSOVER or PM_CROSSOVER.
+     * @param mutation INVERSION_MUTATION or EXCHANGE_MUTATION.
+     */
+    public void setOperators(int selection, int crossover, int mutation) {
+        config.setOperators(selection, crossover, mutation);
+    }
+    
+    /**
+     * Sets the memetic stage of this instance.
+     * @param mode NO_LOCAL_SEARCH, LOCAL_SEARCH_OFFSPRING or LOCAL_SEARCH_ELITE.
+     * @param budget The time local search may take each generation, in 
+     *               microseconds, 0 for no limit.
+     */
+    public void setLocalSearch(int mode, int budget) {
+        config.setLocalSearch(mode, budget);
+        setConfig(config);
+    }
+    
+    /**
+     * Sets the memetic stage of this instance with a limit on its effort, for
+     * runs that are reproducible from their seed, see GAConfig.setLocalSearch().
+     * @param mode NO_LOCAL_SEARCH, LOCAL_SEARCH_OFFSPRING or LOCAL_SEARCH_ELITE.
+     * @param budget The time local search may take each generation, in 
+     *               microseconds, 0 for no limit.
+     * @param effort The cities local search may look at each generation, 0 for
+     *               no limit.
+     */
+    public void setLocalSearch(int mode, int budget, int effort) {
+        config.setLocalSearch(mode, budget, effort);
+        setConfig(config);
+    }
+    
     /**
      * Starts the execution of the GA / The GA's main evolutionary loop.
      * @param printEachGen Set true if you want to see generation stats.
      */
     public void run(boolean printEachGen) {
-        initialise(); // Initialise the population
-        evaluate(); // Evaluate the initial population
+        long startTime = System.currentTimeMillis();
+        evolve(printEachGen);
+        printResult(startTime);
+    }
+    
+    /**
+     * Continues a run from a checkpoint, see setCheckpoint(). The settings and
+     * random generator of the run are restored with its population, so it goes
+     * on exactly as it would have without stopping. A run that had already 
+     * stopped is only printed.
+     * @param filename The checkpoint, taken of the TSP this instance has loaded.
+     * @param printEachGen Set true if you want to see generation stats.
+     * @throws IllegalArgumentException If the checkpoint is not of this TSP.
+     */
+    public void resume(String filename, boolean printEachGen) {
+        long startTime = System.currentTimeMillis();
+        restore(Checkpoint.load(filename));
+        loop(printEachGen);
+        printResult(startTime);
+    }
+    
+    /**
+     * Prints the best result of the last run, and how it stopped.
+     * @param startTime The System.currentTimeMillis() the run started at.
+     */
+    private void printResult(long startTime) {
+        //Print the best result
+        System.out.println("Best Route: "+fitness[selectBest()]);
+        System.out.println(printRoute(individual(selectBest())));
+        if(config.timeLimit() > 0 || config.target() != Integer.MIN_VALUE
+                || config.stagnationLimit() > 0 || config.diversityFloor() > 0) {
+            System.out.println("Stopped by "+stopped+" after "+generationsRun+" generations, "
+                +restarts+" restarts, "+(System.currentTimeMillis()-startTime)+"ms");
+        }
+        if(config.localSearch() != NO_LOCAL_SEARCH) {
+            long total = Math.max(1, localGain+variationGain);
+            System.out.println("Local search: "+(100*localGain/total)+"% of gains (local "+localGain
+                +", evolution "+variationGain+") in "+(localTime/1000000)+"ms");
+        }
+        if(hashing) {
+            System.out.println("Tour hashing: "+reused+" evaluations reused, "+unique
+                +" unique tours in the last generation");
+        }
+        if(checkpoint != null) {
+            System.out.println("Checkpoints: "+checkpoint.saved()+" written, "+checkpoint.skipped()
+                +" skipped while the last was still being written");
+        }
+    }
+    
+    /**
+     * Runs the GA once under the stopping and restart settings of its config,
+     * without printing. Set a time limit to get the best route found within it.
+     * @return The best route found, a copy.
+     */
+    public int[] solve() {
+        evolve(false);
+        int[] route = new int[SIZE];
+        copyBest(route);
+        return route;
+    }
+    
+    /**
+     * The evolutionary loop itself, without printing the final result.
+     * Stops after the generations of the config, or earlier on its time limit
+     * or target. A run that has converged (no improvement in the stagnation
+     * window, or diversity below the floor) restarts keeping its elites, or
+     * stops if restartElites is 0.
+     * @param printEachGen Set true if you want to see generation stats.
+     * @return False if the run was abandoned by a parallel batch.
+     */
+    private boolean evolve(boolean printEachGen) {
+        start();
+        generation = 0;
+        bestSoFar = fitness[selectBest()];
+        improved = 0;
+        restarts = 0;
+        elapsed = 0;
+        stopped = null;
+        return loop(printEachGen);
+    }
+    
+    /**
+     * Runs the current run on from its generation, see evolve().
+     * @param printEachGen Set true if you want to see generation stats.
+     * @return False if the run was abandoned by a parallel batch.
+     */
+    private boolean loop(boolean printEachGen) {
+        if(stopped != null) {
+            return true; // Resumed after it had stopped
+        }
+        if(checkpoint != null && !config.restorable()) {
+            throw new IllegalStateException("A checkpoint cannot be resumed with an operator that "
+                +"is not registered by name, see GAConfig: "+config);
+        }
+        long startTime = System.nanoTime()-elapsed;
+        long timeLimit = config.timeLimit()*1000000L;
+        int target = config.target(), window = config.stagnationLimit();
+        double floor = config.diversityFloor();
+        checkpointTime = System.nanoTime();
         // Loop for required generations
-        for(int g = 0; g < GENERATIONS; g++) {
-            int[][] nextGeneration = generatePopulation(); // Create new population
-            population = nextGeneration; // Copy the new population over
-            evaluate(); // Evaluate the new population
+        int g;
+        for(g = generation; g < config.generations(); g++) {
+            if(cutoff != null && runIndex > cutoff.get()) {
+                generationsRun = g;
+                return false; // An earlier run already reached the goal
+            }
+            step();
             if(printEachGen) {
                 System.out.println("Gen "+g+" | "+generationStats()); // Print stats
-                System.out.println(printRoute(population[selectBest()]));
+                System.out.println(printRoute(individual(selectBest())));
+            }
+            int best = fitness[selectBest()];
+            if(best < bestSoFar) {
+                bestSoFar = best;
+                improved = g;
+            }
+            if(best <= target) {
+                stopped = "target";
+                break;
+            }
+            if(timeLimit > 0 && System.nanoTime()-startTime >= timeLimit) {
+                stopped = "time limit";
+                break;
+            }
+            boolean stagnant = window > 0 && g-improved >= window;
+            boolean converged = floor > 0 && g % DIVERSITY_INTERVAL == 0 && diversity() < floor;
+            if(stagnant || converged) {
+                if(config.restartElites() == 0) {
+                    stopped = stagnant ? "stagnation" : "diversity floor";
+                    break;
+                }
+                restart(config.restartElites());
+                restarts++;
+                improved = g;
+            }
+            if(checkpoint != null && System.nanoTime()-checkpointTime >= checkpointInterval) {
+                generation = g+1;
+                saveCheckpoint(startTime, false);
             }
         }
-        //Print the best result
-        System.out.println("Best Route: "+fitness[selectBest()]);
-        System.out.println(printRoute(population[selectBest()]));
+        generationsRun = g < config.generations() ? g+1 : g;
+        if(stopped == null) {
+            stopped = "generations";
+        }
+        if(checkpoint != null) {
+            generation = generationsRun;
+            saveCheckpoint(startTime, true); // Never skipped, so the checkpoint ends where the run did
+            checkpoint.await(); // The last snapshot is on disk when the run returns
+        }
+        return true;
+    }
+    
+    /**
+     * Snapshots the current run, from the generation field on.
+     * @param startTime The System.nanoTime() the run started at, less the time
+     *                  it took before being resumed.
+     * @param last True for the last snapshot of a run, which waits for one
+     *             still being written rather than being skipped.
+     */
+    private void saveCheckpoint(long startTime, boolean last) {
+        checkpoint.size = SIZE;
+        checkpoint.populationSize = populationSize;
+        checkpoint.generation = generation;
+        checkpoint.bestSoFar = bestSoFar;
+        checkpoint.improved = improved;
+        checkpoint.restarts = restarts;
+        checkpoint.elapsed = System.nanoTime()-startTime;
+        checkpoint.seed = random.seed();
+        checkpoint.gamma = random.gamma();
+        checkpoint.localGain = localGain;
+        checkpoint.variationGain = variationGain;
+        checkpoint.localTime = localTime;
+        checkpoint.reused = reused;
+        checkpoint.stopped = stopped;
+        checkpoint.config = config.toString();
+        if(checkpoint.save(population, fitness, last)) {
+            checkpointTime = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Sets up a run from a snapshot, see resume().
+     * @param snapshot The snapshot.
+     */
+    private void restore(Checkpoint snapshot) {
+        if(snapshot.size != SIZE) {
+            throw new IllegalArgumentException("Checkpoint is of a TSP of "+snapshot.size
+                +" cities, not "+SIZE);
+        }
+        setConfig(GAConfig.parse(snapshot.config));
+        prepare();
+        allocate();
+        for(int i = 0; i < populationSize; i++) {
+            population.write(i, snapshot.population[i]);
+            fitness[i] = snapshot.fitness[i];
+            if(hashing) {
+                hash[i] = hasher.of(population, i);
+            }
+        }
+        random = new GARandom(snapshot.seed, snapshot.gamma);
+        generation = snapshot.generation;
+        bestSoFar = snapshot.bestSoFar;
+        improved = snapshot.improved;
+        restarts = snapshot.restarts;
+        elapsed = snapshot.elapsed;
+        stopped = snapshot.stopped;
+        generationsRun = generation;
+        localGain = snapshot.localGain;
+        variationGain = snapshot.variationGain;
+        localTime = snapshot.localTime;
+        reused = snapshot.reused;
+    }
+    
+    /**
+     * Restarts a converged population: the best individuals are kept, the rest
+     * replaced with random routes.
+     * @param elites The number of individuals to keep.
+     */
+    private void restart(int elites) {
+        elites = Math.min(elites, populationSize);
+        // Move the elites to the front, best first
+        for(int k = 0; k < elites; k++) {
+            int best = k;
+            for(int i = k+1; i < populationSize; i++) {
+                if(fitness[i] < fitness[best]) {
+                    best = i;
+                }
+            }
+            population.swap(k, best);
+            int value = fitness[k];
+            fitness[k] = fitness[best];
+            fitness[best] = value;
+            long key = hash[k];
+            hash[k] = hash[best];
+            hash[best] = key;
+        }
+        for(int i = elites; i < populationSize; i++) {
+            randomise(i);
+            fitness[i] = tourCost(population, i);
+            if(hashing) {
+                hash[i] = hasher.of(population, i);
+            }
+        }
+    }
+    
+    /**
+     * Creates and evaluates the initial population.
+     */
+    void start() {
+        prepare();
+        initialise(); // Initialise the population
+        evaluate(); // Evaluate the initial population
+    }
+    
+    /**
+     * Sets up the local search, tour hashing, evaluator and statistics of a
+     * run.
+     */
+    private void prepare() {
+        if(config.localSearch() != NO_LOCAL_SEARCH && localSearch == null) {
+            if(neighbours == null) {
+                neighbours = LocalSearch.nearestNeighbours(COST, NEIGHBOURS);
+            }
+            localSearch = new LocalSearch(COST, neighbours);
+        }
+        localGain = 0;
+        variationGain = 0;
+        localTime = 0;
+        hashing = config.duplicates() != NO_TOUR_HASH;
+        if(hashing && hasher == null) {
+            hasher = new TourHash(SIZE, !symmetric);
+        }
+        if(evaluation != config.evaluation()) {
+            evaluation = config.evaluation();
+            evaluator = TourEvaluator.create(COST, evaluation);
+        }
+        reused = 0;
+        if(metrics != null) {
+            metrics.reset();
+        }
+    }
+    
+    /**
+     * Runs one generation.
+     */
+    void step() {
+        generatePopulation(); // Create and score the new population
+    }
+    
+    /**
+     * @param worker True if this instance runs side by side with others on a
+     *               pool of threads, so it does its work on the calling thread 
+     *               rather than starting threads of its own. Instances made 
+     *               for batches and islands are workers.
+     */
+    void setWorker(boolean worker) {
+        this.worker = worker;
+    }
+    
+    /**
+     * @param random The random generator to use from now on.
+     */
+    void reseed(GARandom random) {
+        this.random = random;
+    }
+    
+    /**
+     * @return The random generator of this instance.
+     */
+    GARandom random() {
+        return random;
+    }
+    
+    /**
+     * @return The number of cities of the loaded TSP.
+     */
+    int size() {
+        return SIZE;
+    }
+    
+    /**
+     * @return The costs of the loaded TSP.
+     */
+    CostMatrix cost() {
+        return COST;
+    }
+    
+    /**
+     * @return The number of generations of a run.
+     */
+    int generations() {
+        return config.generations();
+    }
+    
+    /**
+     * @return The number of individuals.
+     */
+    int populationSize() {
+        return populationSize;
+    }
+    
+    /**
+     * @param individual The index of an individual.
+     * @return Its fitness.
+     */
+    int fitness(int individual) {
+        return fitness[individual];
+    }
+    
+    /**
+     * @param individual The index of an individual.
+     * @return A copy of its route.
+     */
+    int[] individual(int individual) {
+        int[] route = new int[SIZE];
+        population.read(individual, route);
+        return route;
+    }
+    
+    /**
+     * @return The current population, read by the operators.
+     */
+    Population parents() {
+        return population;
+    }
+    
+    /**
+     * @return The population being generated, written by the operators.
+     */
+    Population children() {
+        return nextPopulation;
+    }
+    
+    /**
+     * @return The number of generations of the last run.
+     */
+    int generationsRun() {
+        return generationsRun;
+    }
+    
+    /**
+     * @return The number of restarts of the last run.
+     */
+    int restarts() {
+        return restarts;
+    }
+    
+    /**
+     * @return Why the last run stopped, e.g. "time limit".
+     */
+    String stopped() {
+        return stopped;
+    }
+    
+    /**
+     * @return The fitness of the best individual.
+     */
+    public int bestFitness() {
+        return fitness[selectBest()];
+    }
+    
+    /**
+     * @param route The array to copy the route of the best individual to.
+     */
+    void copyBest(int[] route) {
+        population.read(selectBest(), route);
+    }
+    
+    /**
+     * Replaces the worst individual with a route from elsewhere.
+     * @param route The route to add.
+     * @param routeFitness The fitness of the route.
+     */
+    void immigrate(int[] route, int routeFitness) {
+        int worst = 0;
+        for(int i = 1; i < populationSize; i++) {
+            if(fitness[i] > fitness[worst]) {
+                worst = i;
+            }
+        }
+        population.write(worst, route);
+        fitness[worst] = routeFitness;
+        if(hashing) {
+            hash[worst] = hasher.of(route);
+        }
+    }
+    
+    /**
+     * Runs the GA as a number of islands, each on its own thread, until the goal
+     * or better is found or each island has run for its generations.
+     * @param islands The number of islands.
+     * @param goal The value to run until.
+     */
+    public void runIslands(int islands, int goal) {
+        new IslandModel(this, islands).run(goal, System.nanoTime(), false);
     }
     
     /**
@@ -103,6 +756,44 @@ public class TSP_GA
         System.out.println("Execution time:"+(endTime-startTime)+"ms");
     }
     
+    /**
+     * Runs the GA until the input goal, or better, is found or the time limit
+     * passes. Unlike runUntil(int), a converged population is restarted keeping
+     * its elites rather than thrown away, using the stagnation settings of the
+     * config, or a window of 500 generations keeping 5 if none are set.
+     * @param goal The value to run until.
+     * @param timeLimit The longest time to run for, in ms.
+     */
+    public void runUntil(int goal, long timeLimit) {
+        System.out.println("RUNNING UNTIL "+goal+" FOR AT MOST "+timeLimit+"ms");
+        GAConfig saved = config;
+        config = new GAConfig(saved);
+        config.setTarget(goal);
+        config.setTimeLimit(timeLimit);
+        config.setGenerations(Integer.MAX_VALUE);
+        if(config.stagnationLimit() == 0 && config.diversityFloor() == 0) {
+            config.setStagnationLimit(RESTART_WINDOW);
+        }
+        if(config.restartElites() == 0) {
+            config.setRestartElites(RESTART_ELITES);
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            evolve(false);
+        }
+        finally {
+            config = saved;
+        }
+        int best = fitness[selectBest()];
+        if(best <= goal) {
+            System.out.println("Found value ("+goal+") after "+generationsRun+" generations, "+restarts+" restarts");
+        } else {
+            System.out.println("Goal ("+goal+") not found, best result: "+best+" after "+restarts+" restarts");
+        }
+        System.out.println("Execution time:"+(System.currentTimeMillis()-startTime)+"ms");
+        System.out.println(printRoute(individual(selectBest())));
+    }
+    
     /**
      * Runs the GA for the entered number of runs.
      * @param runs The number of times of which to run the GA.
@@ -125,209 +816,632 @@ public class TSP_GA
     }
     
     /**
-     * Loads the TSP file. This method will initialise the variables SIZE and COST.
-     * @param filename The name of the TSB file to be loaded.
+     * Runs the GA for the entered number of runs, using every available core.
+     * @param runs The number of times of which to run the GA.
      */
-    public void load(String filename) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(filename));
-            String line = null;
-            
-            int row = 0;
-            int column = 0;
-            boolean read = false;
-            
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("DIMENSION")) {
-                    String[] tokens = line.split(":");
-                    SIZE = Integer.parseInt(tokens[1].trim());
-                    COST = new int[SIZE][SIZE];
-                }
-                else if (line.startsWith("EDGE_WEIGHT_TYPE")) {
-                    String[] tokens = line.split(":");
-                    if (tokens.length < 2 || !tokens[1].trim().equals("EXPLICIT"))
-                    {
-                        throw new RuntimeException("Invalid EDGE_WEIGHT_TYPE: " + tokens[1]);
+    public void runForParallel(int runs) {
+        runForParallel(runs, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+    
+    /**
+     * Runs the GA for the entered number of runs on a pool of threads.
+     * Run i always uses the i-th generator split from the seed, so the results
+     * are the same whatever the number of threads.
+     * @param runs The number of times of which to run the GA.
+     * @param threads The number of worker threads.
+     * @param seed The master seed.
+     */
+    public void runForParallel(int runs, int threads, long seed) {
+        System.out.println("RUNNING FOR "+runs+" ON "+threads+" THREADS (SEED "+seed+")");
+        RunResults results = runBatch(runs, Integer.MIN_VALUE, threads, seed);
+        printResults(results);
+    }
+    
+    /**
+     * Runs the GA repeatedly until the input goal, or better, is found, using
+     * every available core.
+     * WARNING: This method will run endlesly if the goal input is not acheivable.
+     * @param goal The value to run until.
+     */
+    public void runUntilParallel(int goal) {
+        runUntilParallel(goal, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+    
+    /**
+     * Runs the GA repeatedly on a pool of threads until the input goal, or better,
+     * is found. Once a run reaches the goal, every later run is abandoned. Earlier
+     * runs still in progress are finished, so the run that is reported is always 
+     * the first to reach the goal for the seed, whatever the number of threads.
+     * WARNING: This method will run endlesly if the goal input is not acheivable.
+     * @param goal The value to run until.
+     * @param threads The number of worker threads.
+     * @param seed The master seed.
+     */
+    public void runUntilParallel(int goal, int threads, long seed) {
+        System.out.println("RUNNING UNTIL "+goal+" ON "+threads+" THREADS (SEED "+seed+")");
+        RunResults results = runBatch(Integer.MAX_VALUE, goal, threads, seed);
+        System.out.println("Found value ("+goal+") after "+results.count()+" runs");
+        printResults(results);
+    }
+    
+    /**
+     * Runs a batch of independent GA runs on a pool of worker threads.
+     * @param runs The maximum number of runs.
+     * @param goal Stop at the first run that reaches this value, or better.
+     *             Integer.MIN_VALUE runs the full batch.
+     * @param threads The number of worker threads.
+     * @param seed The master seed.
+     * @return The results of every completed run up to the stopping run.
+     */
+    private RunResults runBatch(int runs, int goal, int threads, long seed) {
+        GARandom master = new GARandom(seed);
+        AtomicInteger nextRun = new AtomicInteger();
+        AtomicInteger lastRun = new AtomicInteger(runs-1);
+        RunResults results = new RunResults(SIZE);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<Future<?>>();
+        long startTime = System.currentTimeMillis();
+        for(int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                TSP_GA worker = new TSP_GA(this);
+                worker.cutoff = lastRun;
+                while(true) {
+                    // Hand out run indices and generators in the same order
+                    synchronized(master) {
+                        worker.runIndex = nextRun.getAndIncrement();
+                        worker.random = master.split();
                     }
-                }
-                else if (line.startsWith("EDGE_WEIGHT_FORMAT")) {
-                    String[] tokens = line.split(":");
-                    if (tokens.length < 2 || !tokens[1].trim().equals("LOWER_DIAG_ROW"))
-                    {
-                        throw new RuntimeException("Invalid EDGE_WEIGHT_FORMAT: " + tokens[1]);
+                    if(worker.runIndex > lastRun.get()) {
+                        return null;
                     }
-                }
-                else if (line.startsWith("EDGE_WEIGHT_SECTION")) {
-                    read = true;
-                }
-                else if (line.startsWith("EOF") || line.startsWith("DISPLAY_DATA_SECTION")) {
-                    break;
-                }
-                else if (read) {
-                    String[] tokens = line.split("\\s");
-                    
-                    for (int i = 0; i < tokens.length; i++)
-                    {
-                        String v = tokens[i].trim();
-                        
-                        if (v.length() > 0)
-                        {
-                            int value = Integer.parseInt(tokens[i].trim());
-                            COST[row][column] = value;
-                            column++;
-                            
-                            if (value == 0)
-                            {
-                                row++;
-                                column = 0;
-                            }
+                    if(worker.evolve(false)) {
+                        int best = worker.selectBest();
+                        results.record(worker.runIndex, worker.fitness[best], worker.individual(best));
+                        if(worker.fitness[best] <= goal) {
+                            lastRun.accumulateAndGet(worker.runIndex, Math::min);
                         }
                     }
                 }
+            }));
+        }
+        try {
+            for(Future<?> worker : workers) {
+                worker.get();
             }
-            
-            reader.close();
-            
-            // completes the cost matrix
-            for (int i = 0; i < COST.length; i++) {
-                for (int j = (i + 1); j < COST.length; j++) {
-                    COST[i][j] = COST[j][i];
-                }
-            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Batch run failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        results.finish(lastRun.get()+1, System.currentTimeMillis()-startTime);
+        return results;
+    }
+    
+    /**
+     * Prints the combined results of a parallel batch.
+     * @param results The batch results.
+     */
+    private void printResults(RunResults results) {
+        System.out.println("Best result in "+results.count()+" runs: "+results.best());
+        System.out.println("Average result: "+results.mean());
+        System.out.println("Distribution (min:q1:median:q3:max): "+results.distribution());
+        System.out.println("Execution time:"+results.time()+"ms");
+        System.out.println(printRoute(results.bestRoute()));
+    }
+    
+    /**
+     * Loads the TSP file. This method will initialise the variables SIZE and COST.
+     * Explicit matrices are stored packed, see PackedCostMatrix, in full for an
+     * ATSP. Coordinate instances (EUC_2D, CEIL_2D, ATT and GEO) only store the 
+     * coordinates and compute costs when needed, and edge lists only store their 
+     * edges, see SparseCostMatrix. A file written by savePacked() is memory 
+     * mapped rather than parsed. See TSPLIBReader for the supported formats.
+     * @param filename The name of the TSB file to be loaded.
+     */
+    public void load(String filename) {
+        boolean packed = PackedCostMatrix.isPacked(filename);
+        try {
+            use(read(filename));
         }
         catch (IOException e) {
             throw new RuntimeException("Could not load file: " + filename, e);
         }
         // Print GA run info
         System.out.println("##### TSP #####");
-        System.out.println("Matrix File: "+filename);
+        System.out.println((packed ? "Packed " : "")+"Matrix File: "+filename);
         System.out.println("No. Cities: "+SIZE);
     }
     
     /**
-     * Initialises the population, with a fixed start of 0 (city 1).
+     * Reads a TSP file as load() does, without printing.
+     * @param filename The TSPLIB file, or a file written by savePacked().
+     * @return The cost matrix of the TSP.
+     * @throws IOException If the file cannot be read.
      */
-    private void initialise() {
-        population = new int[POPULATION_SIZE][SIZE]; //Re-initialise population
-        //compList is a store of all cities that can be added to an individual.
-        ArrayList<Integer> compList = new ArrayList<Integer>();
-        for(int i = 1; i < SIZE; i++) {
-            compList.add(i);
+    public static CostMatrix read(String filename) throws IOException {
+        if (PackedCostMatrix.isPacked(filename)) {
+            return PackedCostMatrix.open(filename);
         }
-        
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            //Copy compList so the original is no changed.
-            ArrayList<Integer> cities = new ArrayList(compList);
-            population[i][0] = 0; // Add fixed start city
-            for(int i2 = 1; i2 < SIZE; i2++) {
-                int place = random.nextInt(cities.size());
-                population[i][i2] = cities.get(place);
-                cities.remove(place); //Ensure we can no longer pick this city
+        return TSPLIBReader.read(filename, COORD_CACHE_BITS);
+    }
+    
+    /**
+     * Switches this instance to a TSP, setting SIZE and COST.
+     * @param cost The TSP costs.
+     */
+    private void use(CostMatrix cost) {
+        COST = cost;
+        SIZE = COST.size();
+        symmetric = COST.symmetric();
+        localSearch = null; // Sized for the old TSP
+        hasher = null;
+        seeding = null;
+        evaluator = TourEvaluator.create(COST, evaluation); // The old one holds the old TSP
+        neighbours = config.localSearch() == NO_LOCAL_SEARCH ? null
+            : LocalSearch.nearestNeighbours(COST, NEIGHBOURS);
+    }
+    
+    /**
+     * Saves the loaded TSP as a packed cost matrix, which load() can then open
+     * straight away by memory mapping it.
+     * @param filename The file to write.
+     */
+    public void savePacked(String filename) {
+        if (COST instanceof CoordinateCostMatrix) {
+            throw new RuntimeException("Coordinate TSPs are not stored as a matrix");
+        }
+        if (COST instanceof SparseCostMatrix) {
+            throw new RuntimeException("Sparse TSPs are not stored as a matrix");
+        }
+        PackedCostMatrix packed = COST instanceof PackedCostMatrix 
+            ? (PackedCostMatrix)COST : PackedCostMatrix.of(COST);
+        try {
+            packed.save(filename);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Could not save file: " + filename, e);
+        }
+    }
+    
+    /**
+     * Prints the memory footprint and lookup throughput of the cost matrix next 
+     * to a full int[][] matrix.
+     */
+    public void costReport() {
+        PackedCostMatrix.compare(COST);
+    }
+    
+    /**
+     * Initialises the population, with a fixed start of 0 (city 1). The shares
+     * of the population set in the config are built by Seeding, the rest are
+     * random.
+     */
+    void initialise() {
+        allocate();
+        for(int i = seed(); i < populationSize; i++) {
+            randomise(i);
+        }
+    }
+    
+    /**
+     * Fills the first individuals with heuristic tours, in the shares of the
+     * population set in the config, built on a pool of worker threads, or on
+     * this thread for a worker, see setWorker().
+     * Each tour has its own generator, split in order on this thread, so the
+     * tours do not depend on the number of threads.
+     * @return The number of individuals seeded.
+     */
+    private int seed() {
+        int[] methods = new int[populationSize];
+        int seeded = 0;
+        boolean needsNeighbours = false;
+        for(int m = 0; m < Seeding.METHODS; m++) {
+            int count = config.seeding(m)*populationSize/100;
+            for(int i = 0; i < count; i++) {
+                methods[seeded++] = m;
+            }
+            needsNeighbours |= count > 0 && Seeding.needsNeighbours(m, COST);
+        }
+        if(seeded == 0) {
+            return 0;
+        }
+        if(needsNeighbours && neighbours == null) {
+            neighbours = LocalSearch.nearestNeighbours(COST, NEIGHBOURS);
+            seeding = null; // Made without candidate lists
+        }
+        if(seeding == null) {
+            seeding = new Seeding(COST, neighbours);
+        }
+        GARandom[] generators = new GARandom[seeded];
+        for(int i = 0; i < seeded; i++) {
+            generators[i] = random.split();
+        }
+        int threads = worker ? 1 : Math.min(seeded, Runtime.getRuntime().availableProcessors());
+        AtomicInteger nextTour = new AtomicInteger();
+        if(threads == 1) {
+            seedTours(methods, generators, nextTour);
+            return seeded;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<?>> workers = new ArrayList<Future<?>>();
+        for(int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                seedTours(methods, generators, nextTour);
+                return null;
+            }));
+        }
+        try {
+            for(Future<?> worker : workers) {
+                worker.get();
             }
         }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Seeding interrupted", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Seeding failed", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return seeded;
+    }
+    
+    /**
+     * Builds seeded tours until none are left, taking each from a shared
+     * counter, so any number of threads can run it at once.
+     * @param methods The seeding method of each tour.
+     * @param generators The random generator of each tour.
+     * @param nextTour The next tour to build.
+     */
+    private void seedTours(int[] methods, GARandom[] generators, AtomicInteger nextTour) {
+        int[] tour = new int[SIZE];
+        for(int i = nextTour.getAndIncrement(); i < generators.length; i = nextTour.getAndIncrement()) {
+            seeding.build(methods[i], tour, generators[i]);
+            population.write(i, tour); // Each thread writes its own individuals
+        }
     }
     
     /**
-     * Generates a new population from the current.
-     * Switch cases are used to decide what methods to use, as specified in the 
-     * constants. Switch cases allow for easy addition of methods in the future if 
-     * required.
-     * @return The generated population.
+     * Allocates the population buffers of a run, if the last run's do not fit.
      */
-    private int[][] generatePopulation() {
-        int[][] newPopulation = new int[POPULATION_SIZE][SIZE];
+    private void allocate() {
+        // Allocate both population buffers once, runs after the first reuse them
+        if(population == null || population.size() != SIZE || populationSize != config.populationSize()) {
+            populationSize = config.populationSize();
+            population = Population.create(populationSize, SIZE);
+            nextPopulation = Population.create(populationSize, SIZE);
+            fitness = new int[populationSize];
+            nextFitness = new int[populationSize];
+            roulette = new double[populationSize];
+            hash = new long[populationSize];
+            nextHash = new long[populationSize];
+            position = new int[SIZE];
+            route = new int[SIZE];
+        }
+        if(hashing && (tableHash == null || tableHash.length < 4*populationSize)) {
+            // At most two generations are held, so the table is at most half full
+            int length = Integer.highestOneBit(4*populationSize-1)*2;
+            tableHash = new long[length];
+            tableFitness = new int[length];
+            tableStamps = new int[length];
+            tableStamp = 0;
+        }
+    }
+    
+    /**
+     * Fills an individual with a random route, with a fixed start of 0, by a
+     * Fisher-Yates shuffle in place, as Seeding.shuffle().
+     * @param individual The individual of the population to fill.
+     */
+    private void randomise(int individual) {
+        int offset = population.offset(individual);
+        for(int i = 0; i < SIZE; i++) {
+            population.set(offset+i, i);
+        }
+        for(int i = SIZE-1; i > 1; i--) {
+            int j = 1+random.nextInt(i); // Never the fixed start
+            int city = population.get(offset+i);
+            population.set(offset+i, population.get(offset+j));
+            population.set(offset+j, city);
+        }
+    }
+    
+    /**
+     * Generates a new population from the current, replacing it.
+     * The operators used are the strategies of the config, see GAConfig, so
+     * other methods can be added without changing this loop.
+     * Fitness is carried with each individual: the elite keeps its fitness,
+     * mutated children are scored from their parent and only crossover children
+     * are evaluated in full.
+     * Children are written into nextPopulation, which is then swapped with 
+     * population, so no memory is allocated per generation.
+     */
+    private void generatePopulation() {
+        Population newPopulation = nextPopulation;
+        int[] newFitness = nextFitness;
+        long[] newHash = nextHash;
+        if(hashing) {
+            startTable();
+        }
         // Copy current generation best individual (eletism)
-        newPopulation[0] = copy(population[selectBest()]);
+        int best = selectBest();
+        population.copy(best, newPopulation, 0);
+        newFitness[0] = fitness[best];
+        newHash[0] = hash[best];
+        int localSearchMode = config.localSearch();
+        long deadline = config.localSearchBudget() == 0 ? Long.MAX_VALUE
+            : System.nanoTime()+config.localSearchBudget()*1000L; // Local search budget
+        effortLeft = config.localSearchEffort() == 0 ? Integer.MAX_VALUE : config.localSearchEffort();
+        if(localSearchMode == LOCAL_SEARCH_ELITE) {
+            newFitness[0] -= localImprove(newPopulation, 0, deadline);
+        }
+        if(hashing) {
+            newHash[0] = rehash(newPopulation, 0, newHash[0], newFitness[0] != fitness[best]);
+            keep(newHash[0], newFitness[0]);
+        }
+        SelectionOperator selection = config.selection();
+        CrossoverOperator crossover = config.crossover();
+        MutationOperator mutation = config.mutation();
+        int mutationChance = config.mutationChance();
+        boolean reject = config.duplicates() == REJECT_DUPLICATES;
+        int retries = 0; // Duplicates bred again for this slot
+        // Timings for the metrics, only taken when they are on
+        GAMetrics metrics = this.metrics;
+        long selectionTime = 0, variationTime = 0, evaluationTime = 0;
+        if(metrics != null) {
+            lap();
+        }
+        selection.prepare(this);
         // Generate the rest of the new population
-        for(int i = 1; i < POPULATION_SIZE; i++) {
+        for(int i = 1; i < populationSize; i++) {
             //Select 2 parents, though mutation will only use one.
-            int[] parents = new int[2];
-            switch(SELECTION_METHOD) {
-                case TOURNAMENT_SELECT:
-                    parents[0] = tournamentSelect();
-                    parents[1] = tournamentSelect();
-                    break;
-                case ROULETTE_SELECT:
-                    parents[0] = rouletteSelect();
-                    parents[1] = rouletteSelect();
-                    break;
-                default:
-                    parents[0] = tournamentSelect();
-                    parents[1] = tournamentSelect();
-                    break;
+            int parent1 = selection.select(this);
+            int parent2 = selection.select(this);
+            if(metrics != null) {
+                selectionTime += lap();
             }
             
             //Decide to mutate or crossover
-            if(random.nextInt(99) > MUTATION_CHANCE-1 && i < POPULATION_SIZE-1) {
+            if(random.nextInt(99) > mutationChance-1 && i < populationSize-1) {
                 //CROSSOVER
-                int[][] children;
-                switch(CROSSOVER_METHOD) {
-                    case CYCLE_CROSSOVER:
-                        children = cycleCrossover(parents);
-                        break;
-                    case PM_CROSSOVER:
-                        children = partiallyMappedCrossover(parents);
-                        break;
-                    default:
-                        children = cycleCrossover(parents); // Default to cycle crossover
-                        break;
+                crossover.cross(this, parent1, parent2, i, i+1);
+                if(metrics != null) {
+                    variationTime += lap();
+                }
+                if(hashing) {
+                    long hash1 = hasher.of(newPopulation, i), hash2 = hasher.of(newPopulation, i+1);
+                    if(reject && retries < DUPLICATE_RETRIES
+                            && (current(hash1) || current(hash2) || hash1 == hash2)) {
+                        retries++;
+                        i--; // Breed this slot again
+                        continue;
+                    }
+                    // A tour already seen keeps its fitness
+                    newFitness[i] = score(newPopulation, i, hash1);
+                    newFitness[i+1] = score(newPopulation, i+1, hash2);
+                    newHash[i] = hash1;
+                    newHash[i+1] = hash2;
+                } else {
+                    evaluator.evaluate(newPopulation, i, 2, newFitness);
                 }
-                newPopulation[i] = children[0];
-                newPopulation[++i] = children[1]; //Increment i additional value
+                if(metrics != null) {
+                    evaluationTime += lap();
+                }
+                int parentFitness = Math.min(fitness[parent1], fitness[parent2]);
+                variationGain += Math.max(0, parentFitness-newFitness[i]);
+                variationGain += Math.max(0, parentFitness-newFitness[i+1]);
+                if(localSearchMode == LOCAL_SEARCH_OFFSPRING) {
+                    int gain1 = localImprove(newPopulation, i, deadline);
+                    int gain2 = localImprove(newPopulation, i+1, deadline);
+                    newFitness[i] -= gain1;
+                    newFitness[i+1] -= gain2;
+                    if(hashing) {
+                        newHash[i] = rehash(newPopulation, i, newHash[i], gain1 > 0);
+                        newHash[i+1] = rehash(newPopulation, i+1, newHash[i+1], gain2 > 0);
+                    }
+                    if(metrics != null) {
+                        lap(); // Local search is timed on its own
+                    }
+                }
+                if(hashing) {
+                    keep(newHash[i], newFitness[i]);
+                    keep(newHash[i+1], newFitness[i+1]);
+                }
+                i++; //Increment i additional value
             } else {
                 //MUTATION
-                int[] child;
-                switch(MUTATION_METHOD) {
-                    case EXCHANGE_MUTATION:
-                        child = exchangeMutation(parents[0]);
-                        break;
-                    case INVERSION_MUTATION:
-                        child = inversionMutation(parents[0]);
-                        break;
-                    default:
-                        child = inversionMutation(parents[0]); // Default to inversion mutation
-                        break;
+                childHashed = false;
+                newFitness[i] = mutation.mutate(this, parent1, i);
+                if(metrics != null) {
+                    variationTime += lap(); // Includes scoring by delta
+                }
+                if(hashing) {
+                    newHash[i] = childHashed ? childHash : hasher.of(newPopulation, i);
+                    if(reject && retries < DUPLICATE_RETRIES && current(newHash[i])) {
+                        retries++;
+                        i--; // Breed this slot again
+                        continue;
+                    }
+                }
+                variationGain += Math.max(0, fitness[parent1]-newFitness[i]);
+                if(localSearchMode == LOCAL_SEARCH_OFFSPRING) {
+                    int gain = localImprove(newPopulation, i, deadline);
+                    newFitness[i] -= gain;
+                    if(hashing) {
+                        newHash[i] = rehash(newPopulation, i, newHash[i], gain > 0);
+                    }
+                    if(metrics != null) {
+                        lap();
+                    }
+                }
+                if(hashing) {
+                    keep(newHash[i], newFitness[i]);
                 }
-                newPopulation[i] = child;
             }
+            retries = 0;
+        }
+        // Swap the buffers, the old population is overwritten next generation
+        nextPopulation = population;
+        nextFitness = fitness;
+        nextHash = hash;
+        population = newPopulation;
+        fitness = newFitness;
+        hash = newHash;
+        if(metrics != null) {
+            metrics.record(this, selectionTime, variationTime, evaluationTime, populationSize-1,
+                hashing ? unique : 0);
         }
-        return newPopulation;
     }
     
     /**
-     * Selection method using a tournament technique.
-     * @return The index of the selected individual.
+     * Starts the tour table of a new generation, holding the tours of the 
+     * current population with their fitness.
      */
-    private int tournamentSelect() {
-        int[] contesters = new int[TOURNAMENT_SIZE];
-        //Get contesters
-        for(int i = 0; i < TOURNAMENT_SIZE; i++) {
-            contesters[i] = random.nextInt(POPULATION_SIZE-1);
+    private void startTable() {
+        if(tableStamp >= Integer.MAX_VALUE-2) {
+            Arrays.fill(tableStamps, 0); // Stamps would overflow, so empty the table
+            tableStamp = 0;
         }
-        int best = contesters[0]; // Set initial individual to beat
-        for(int i = 1; i < TOURNAMENT_SIZE; i++) {
-            if(fitness[contesters[i]] < fitness[best]) {
-                best= contesters[i];
+        tableStamp += 2; // Older entries now count as empty
+        for(int i = 0; i < populationSize; i++) {
+            int slot = slot(hash[i]);
+            if(tableStamps[slot] < tableStamp-1) {
+                tableHash[slot] = hash[i];
+                tableFitness[slot] = fitness[i];
+                tableStamps[slot] = tableStamp-1;
+            }
+        }
+        unique = 0;
+    }
+    
+    /**
+     * @return The slot of a tour in the table, or the empty slot it would go in.
+     */
+    private int slot(long key) {
+        int mask = tableHash.length-1;
+        int slot = (int)(key ^ (key >>> 32)) & mask;
+        while(tableStamps[slot] >= tableStamp-1 && tableHash[slot] != key) {
+            slot = (slot+1) & mask; // Linear probing
+        }
+        return slot;
+    }
+    
+    /**
+     * @return True if a tour is already in the generation being made.
+     */
+    private boolean current(long key) {
+        return tableStamps[slot(key)] == tableStamp;
+    }
+    
+    /**
+     * Scores a child, reusing the fitness of the same tour in the last or 
+     * current generation if there is one.
+     * @param children The generation being made.
+     * @param child The child.
+     * @param key The hash of the child.
+     * @return The fitness of the child.
+     */
+    private int score(Population children, int child, long key) {
+        int slot = slot(key);
+        if(tableStamps[slot] >= tableStamp-1) {
+            reused++;
+            return tableFitness[slot];
+        }
+        return tourCost(children, child);
+    }
+    
+    /**
+     * Adds a tour to the generation being made, counting it if it is new.
+     * @param key The hash of the tour.
+     * @param tourFitness The fitness of the tour.
+     */
+    private void keep(long key, int tourFitness) {
+        int slot = slot(key);
+        if(tableStamps[slot] != tableStamp) {
+            unique++;
+            tableHash[slot] = key;
+            tableFitness[slot] = tourFitness;
+            tableStamps[slot] = tableStamp;
+        }
+    }
+    
+    /**
+     * @return The hash of a tour, computed again if it has changed.
+     */
+    private long rehash(Population tours, int tour, long key, boolean changed) {
+        return changed ? hasher.of(tours, tour) : key;
+    }
+    
+    /**
+     * @return The time since the last lap, in ns.
+     */
+    private long lap() {
+        long now = System.nanoTime();
+        long time = now-clock;
+        clock = now;
+        return time;
+    }
+    
+    /**
+     * Improves an individual with local search, if the generation's budget and
+     * effort are not used up.
+     * @param tours The population of the individual.
+     * @param individual The individual to improve in place.
+     * @param deadline The end of the generation's local search budget.
+     * @return The reduction in cost of the individual.
+     */
+    private int localImprove(Population tours, int individual, long deadline) {
+        long startTime = System.nanoTime();
+        if(startTime > deadline || effortLeft == 0) {
+            return 0;
+        }
+        tours.read(individual, route); // Local search works on an array of its own
+        int gain = localSearch.improve(route, deadline, effortLeft);
+        effortLeft -= localSearch.looked();
+        if(gain > 0) {
+            tours.write(individual, route);
+        }
+        localTime += System.nanoTime()-startTime;
+        localGain += gain;
+        return gain;
+    }
+    
+    /**
+     * Selection method using a tournament technique. Each contester is drawn 
+     * from the whole population, so a draw is O(tournament size).
+     * @return The index of the selected individual.
+     */
+    int tournamentSelect() {
+        int best = random.nextInt(populationSize); // Set initial individual to beat
+        //Get the other contesters
+        for(int i = 1; i < config.tournamentSize(); i++) {
+            int contester = random.nextInt(populationSize);
+            if(fitness[contester] < fitness[best]) {
+                best = contester;
             }
         }
         return best;
     }
     
     /**
-     * Selection method using a roulette technique.
+     * Builds the roulette wheel for the current population. Called once per 
+     * generation so that each rouletteSelect() is only a binary search.
      * Roulette selection encourages maximisation and so is incompatible with TSP.
      * I have implemented a method of reversing the values so that a greater degree
      * of proportionality is kept, and encouraging minimisation.
-     * @return The index of the selected individual.
      */
-    private int rouletteSelect() {
-        double[] roulette = new double[POPULATION_SIZE];
-        int[] inverseFitness = new int[POPULATION_SIZE];
-        double total = 0;
+    void buildRoulette() {
         int max = 0, min = 0;
         //Find max and min values
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            total += fitness[i];
+        for(int i = 0; i < populationSize; i++) {
             if(fitness[i] > max) {
                 max = fitness[i];
             }
@@ -336,157 +1450,298 @@ public class TSP_GA
             }
         }
         
-        //Reverse the proportionality of each individual
-        int x = max+min;
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            inverseFitness[i] = x-fitness[i];
-        }
-        
-        //Calculate total
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            total += inverseFitness[i];
+        //Reverse the proportionality of each individual, and total them
+        long x = (long)max+min;
+        double total = 0;
+        for(int i = 0; i < populationSize; i++) {
+            total += x-fitness[i];
+            roulette[i] = total; // Cumulative total so far
         }
         
-        double cumulative = 0.0;
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            roulette[i] = cumulative + (inverseFitness[i] / total);
-            cumulative = roulette[i];
+        for(int i = 0; i < populationSize; i++) {
+            roulette[i] = roulette[i] / total;
         }
-        
-        roulette[POPULATION_SIZE-1] = 1.0;
-        int parent = -1;
+        roulette[populationSize-1] = 1.0;
+    }
+    
+    /**
+     * Selection method using a roulette technique, see buildRoulette().
+     * @return The index of the selected individual.
+     */
+    int rouletteSelect() {
         double probability = random.nextDouble();
-        
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            if(probability <= roulette[i]) {
-                parent = i;
-                break;
+        //Binary search for the first slot covering the probability
+        int low = 0, high = populationSize-1;
+        while(low < high) {
+            int mid = (low+high) >>> 1;
+            if(probability <= roulette[mid]) {
+                high = mid;
+            } else {
+                low = mid+1;
             }
         }
-        
-        return parent;
+        return low;
     }
     
     /**
      * Calculates the fitness values for each individual.
      */
-    private void evaluate() {
-        for(int i = 0; i < POPULATION_SIZE; i++) {
-            int fitness = 0;
-            for(int i2 = 0; i2 < SIZE-1; i2++) {
-                // Add the cost of this position to the next
-                fitness += COST[population[i][i2]][population[i][i2+1]];
+    void evaluate() {
+        evaluator.evaluate(population, 0, populationSize, fitness); // Set the fitness values
+        if(hashing) {
+            for(int i = 0; i < populationSize; i++) {
+                hash[i] = hasher.of(population, i);
             }
-            // Add cost of the returning back to the start position
-            fitness += COST[population[i][SIZE-1]][population[i][0]];
-            this.fitness[i] = fitness; // Se the firness value
         }
     }
     
+    /**
+     * Calculates the full cost of a route.
+     * @param tours The population of the route.
+     * @param individual The individual to cost.
+     * @return The cost of the route.
+     */
+    private int tourCost(Population tours, int individual) {
+        return evaluator.cost(tours, individual);
+    }
+    
     /**
      * Combines genetic material from 2 parent individuals using a partial map
-     * crossover technique.
-     * @param parents The individuals to crossover from.
-     * @return The 2 child individuals.
+     * crossover technique. Runs in O(SIZE).
+     * @param parent1 The first individual to crossover from.
+     * @param parent2 The second individual to crossover from.
+     * @param child1 The individual of nextPopulation to write the first child to.
+     * @param child2 The individual of nextPopulation to write the second child to.
      */
-    private int[][] partiallyMappedCrossover(int[] parents) {
-        int[][] children = new int[2][SIZE];
+    void partiallyMappedCrossover(int parent1, int parent2, int child1, int child2) {
         int p1 = random.nextInt(SIZE-2)+1, p2 = p1+random.nextInt((SIZE-1)-p1);
         if(p1 == p2) {p2++;}
+        int tour1 = population.offset(parent1), tour2 = population.offset(parent2);
+        int offset1 = nextPopulation.offset(child1), offset2 = nextPopulation.offset(child2);
         //Copy the mapping section
         for(int i = p1; i <= p2; i++) {
-            children[0][i] = population[parents[1]][i];
-            children[1][i] = population[parents[0]][i];
+            nextPopulation.set(offset1+i, population.get(tour2+i));
+            nextPopulation.set(offset2+i, population.get(tour1+i));
         }
         
         //Fill the rest of the children
-        for(int i = 0; i < 2; i++) { //For both children
-            children[i][0] = population[parents[i]][0]; //Copy first value directly
-            for(int i2 = 1; i2 < SIZE; i2++) { //For each value
-                if(children[i][i2] == 0) { //If the value is empty
-                    //Check if value already exists in the child
-                    int searchIndex = i2;
-                    boolean canAdd; //Assume true
-                    do {
-                        canAdd = true;
-                        for(int i3 = 1; i3 < SIZE; i3++) {
-                            if(children[i][i3] == population[parents[i]][searchIndex]) {
-                                canAdd = false; //Found the value exists already
-                                searchIndex = i3;
-                                break;
-                            }
-                        }
-                    } while(!canAdd);
-                    
-                    if(canAdd) { //Add the value
-                        children[i][i2] = population[parents[i]][searchIndex];
-                    }
-                }
+        fillMapped(tour1, offset1, p1, p2);
+        fillMapped(tour2, offset2, p1, p2);
+    }
+    
+    /**
+     * Fills the values outside the mapping section of a partial map crossover 
+     * child from its parent.
+     * A parent value already in the mapping section is replaced by the parent 
+     * value at the position it was found, until a value not in the section is 
+     * found. The position array makes each lookup O(1), and as the mapping is one
+     * to one each section position is visited at most once over the whole fill.
+     * @param parent The offset of the parent to fill from, in population.
+     * @param child The offset of the child with its mapping section copied, in 
+     *              nextPopulation.
+     * @param p1 The first position of the mapping section.
+     * @param p2 The last position of the mapping section.
+     */
+    private void fillMapped(int parent, int child, int p1, int p2) {
+        Arrays.fill(position, -1); // -1 marks a city not in the mapping section
+        for(int i = p1; i <= p2; i++) {
+            position[nextPopulation.get(child+i)] = i;
+        }
+        nextPopulation.set(child, population.get(parent)); //Copy first value directly
+        for(int i2 = 1; i2 < SIZE; i2++) { //For each value
+            if(i2 == p1) {
+                i2 = p2; // Skip the mapping section
+                continue;
             }
+            int value = population.get(parent+i2);
+            //Follow the mapping while the value already exists in the child
+            while(position[value] != -1) {
+                value = population.get(parent+position[value]);
+            }
+            nextPopulation.set(child+i2, value); //Add the value
         }
-        return children;
     }
     
     /**
      * Combines genetic material from 2 parent individuals using a cycle crossover
-     * technique.
-     * @param parents The individuals to crossover from.
-     * @return The 2 child individuals.
-     */
-    private int[][] cycleCrossover(int parents[]) {
-        int[][] children = new int[2][SIZE]; // Array of 2 children to return
-        children[0] = copy(population[parents[0]]); // Copy parent 1
-        children[1] = copy(population[parents[1]]); // Copy parent 2
+     * technique. Runs in O(SIZE).
+     * @param parent1 The first individual to crossover from.
+     * @param parent2 The second individual to crossover from.
+     * @param child1 The individual of nextPopulation to write the first child to.
+     * @param child2 The individual of nextPopulation to write the second child to.
+     */
+    void cycleCrossover(int parent1, int parent2, int child1, int child2) {
+        population.copy(parent1, nextPopulation, child1); // Copy parent 1
+        population.copy(parent2, nextPopulation, child2); // Copy parent 2
+        int tour1 = population.offset(parent1), tour2 = population.offset(parent2);
+        int offset1 = nextPopulation.offset(child1), offset2 = nextPopulation.offset(child2);
+        for(int i = 0; i < SIZE; i++) {
+            position[population.get(tour1+i)] = i; // Index of each city in parent 1
+        }
         int index = random.nextInt(SIZE-2)+1; // Index assigned with start value, ensuring its not 0 by +1
         int startIndex = index; // Store starting index
         // Loop until we get back to the start
         do {
             // Copy data
-            children[0][index] = population[parents[1]][index];
-            children[1][index] = population[parents[0]][index];
+            int city = population.get(tour2+index);
+            nextPopulation.set(offset1+index, city);
+            nextPopulation.set(offset2+index, population.get(tour1+index));
             // Find index of parent2 data in parent1
-            int search = -1, prevIndex = index;
-            // Loop until p2 value found in p1
-            do {
-                search++;
-                if(population[parents[0]][search] == population[parents[1]][index]) {
-                    prevIndex = index;
-                    index = search;
-                }
-            } while(population[parents[0]][search] != population[parents[1]][prevIndex]);
+            index = position[city];
         } while(index != startIndex);
-        return children; // Return children
     }
     
     /**
      * Mutation using exchange mutation techinque.
      * @param parent The individual to mutate from.
-     * @return The mutated child.
+     * @param child The individual of nextPopulation to write the mutated child to.
+     * @return The fitness of the mutated child.
      */
-    private int[] exchangeMutation(int parent) {
-        int[] child = copy(population[parent]); // A copy of the parent
+    int exchangeMutation(int parent, int child) {
+        population.copy(parent, nextPopulation, child); // A copy of the parent
         int p1 = random.nextInt(SIZE-2)+1, p2 = p1+random.nextInt((SIZE-1)-p1);
         if(p1 == p2) {p2++;} // Ensure p2 is larger
-        child[p1] = population[parent][p2]; // Assign value of second point
-        child[p2] = population[parent][p1]; // Assign value of first point.
-        return child;
+        int tour = population.offset(parent), offset = nextPopulation.offset(child);
+        nextPopulation.set(offset+p1, population.get(tour+p2)); // Assign value of second point
+        nextPopulation.set(offset+p2, population.get(tour+p1)); // Assign value of first point.
+        if(hashing) {
+            childHash = hash[parent] ^ exchangeHashDelta(tour, p1, p2);
+            childHashed = true;
+        }
+        return fitness[parent] + exchangeDelta(tour, p1, p2);
     }
     
     /**
      * Mutation using inverison technique.
      * @param parent The individual to mutate from.
-     * @return The mutated child
+     * @param child The individual of nextPopulation to write the mutated child to.
+     * @return The fitness of the mutated child.
      */
-    private int[] inversionMutation(int parent) {
-        int[] child = copy(population[parent]);
+    int inversionMutation(int parent, int child) {
+        population.copy(parent, nextPopulation, child);
         int p1 = random.nextInt(SIZE-2)+1, p2 = p1+random.nextInt((SIZE-1)-p1);
         if(p1 == p2) {p2++;} // Ensure p2 is larger
-        
+        int tour = population.offset(parent), offset = nextPopulation.offset(child);
         for(int i = 0; i <= (p2-p1); i++) {
             //System.out.println("Copying:"+(p1+i)+" to "+(p2-i));
-            child[p2-i] = population[parent][p1+i];
+            nextPopulation.set(offset+p2-i, population.get(tour+p1+i));
+        }
+        if(hashing) {
+            childHash = hash[parent] ^ inversionHashDelta(tour, p1, p2);
+            childHashed = true;
+        }
+        return fitness[parent] + inversionDelta(tour, p1, p2);
+    }
+    
+    /**
+     * The change in cost of swapping the cities at two positions of a route.
+     * Only the (up to) four edges touching the two positions change, and
+     * every other edge keeps its direction.
+     * @param tour The offset of the route before the swap, in population.
+     * @param p1 The first position, 0 < p1 < p2.
+     * @param p2 The second position, p2 < SIZE.
+     * @return The cost of the swapped route minus the cost of the route.
+     */
+    private int exchangeDelta(int tour, int p1, int p2) {
+        int before1 = population.get(tour+p1-1), city1 = population.get(tour+p1), after1 = population.get(tour+p1+1);
+        int before2 = population.get(tour+p2-1), city2 = population.get(tour+p2), after2 = population.get(tour+(p2+1)%SIZE);
+        if(p2 == p1+1) { // Adjacent, so the edge between them is kept (reversed)
+            return COST.cost(before1, city2) + COST.cost(city2, city1) + COST.cost(city1, after2)
+                - COST.cost(before1, city1) - COST.cost(city1, city2) - COST.cost(city2, after2);
+        }
+        return COST.cost(before1, city2) + COST.cost(city2, after1)
+            + COST.cost(before2, city1) + COST.cost(city1, after2)
+            - COST.cost(before1, city1) - COST.cost(city1, after1)
+            - COST.cost(before2, city2) - COST.cost(city2, after2);
+    }
+    
+    /**
+     * The change in cost of reversing a section of a route.
+     * If the matrix is symmetric only the two edges at the ends of the section
+     * change; otherwise every edge inside the section is turned round too, so
+     * this runs in O(p2-p1).
+     * @param tour The offset of the route before the reversal, in population.
+     * @param p1 The first position of the section, 0 < p1 < p2.
+     * @param p2 The last position of the section, p2 < SIZE.
+     * @return The cost of the reversed route minus the cost of the route.
+     */
+    private int inversionDelta(int tour, int p1, int p2) {
+        int before = population.get(tour+p1-1), first = population.get(tour+p1);
+        int last = population.get(tour+p2), after = population.get(tour+(p2+1)%SIZE);
+        int delta = COST.cost(before, last) + COST.cost(first, after)
+            - COST.cost(before, first) - COST.cost(last, after);
+        for(int i = tour+p1; !symmetric && i < tour+p2; i++) {
+            int city = population.get(i), next = population.get(i+1);
+            delta += COST.cost(next, city) - COST.cost(city, next);
         }
-        return child;
+        return delta;
+    }
+    
+    /**
+     * Measures how far the population has converged: the mean share of edges of
+     * a few evenly spaced individuals that are not in the best route, 0 when
+     * they all follow it. Runs in O(SIZE) and does not use the random generator.
+     * @return The diversity, from 0 to 1.
+     */
+    double diversity() {
+        if(next == null || next.length != SIZE) {
+            next = new int[SIZE];
+            previous = new int[SIZE];
+        }
+        int best = population.offset(selectBest());
+        for(int i = 0; i < SIZE; i++) {
+            int city = population.get(best+i), after = population.get(best+(i+1 == SIZE ? 0 : i+1));
+            next[city] = after;
+            previous[after] = city;
+        }
+        int samples = Math.min(DIVERSITY_SAMPLES, populationSize);
+        long differing = 0;
+        for(int s = 0; s < samples; s++) {
+            int other = population.offset(s*populationSize/samples);
+            for(int i = 0; i < SIZE; i++) {
+                int city = population.get(other+i), after = population.get(other+(i+1 == SIZE ? 0 : i+1));
+                // A route of a symmetric TSP may follow the best either way round
+                if(next[city] != after && (!symmetric || previous[city] != after)) {
+                    differing++;
+                }
+            }
+        }
+        return (double)differing/((long)samples*SIZE);
+    }
+    
+    /**
+     * The change in tour hash of swapping the cities at two positions, see 
+     * exchangeDelta().
+     * @return The XOR of the hashes of the edges removed and added.
+     */
+    private long exchangeHashDelta(int tour, int p1, int p2) {
+        int before1 = population.get(tour+p1-1), city1 = population.get(tour+p1), after1 = population.get(tour+p1+1);
+        int before2 = population.get(tour+p2-1), city2 = population.get(tour+p2), after2 = population.get(tour+(p2+1)%SIZE);
+        if(p2 == p1+1) { // Adjacent, so the edge between them is kept, turned round
+            return hasher.edge(before1, city2) ^ hasher.edge(city1, after2)
+                ^ hasher.edge(before1, city1) ^ hasher.edge(city2, after2)
+                ^ hasher.edge(city2, city1) ^ hasher.edge(city1, city2); // 0 unless directed
+        }
+        return hasher.edge(before1, city2) ^ hasher.edge(city2, after1)
+            ^ hasher.edge(before2, city1) ^ hasher.edge(city1, after2)
+            ^ hasher.edge(before1, city1) ^ hasher.edge(city1, after1)
+            ^ hasher.edge(before2, city2) ^ hasher.edge(city2, after2);
+    }
+    
+    /**
+     * The change in tour hash of reversing a section, see inversionDelta().
+     * @return The XOR of the hashes of the edges removed and added.
+     */
+    private long inversionHashDelta(int tour, int p1, int p2) {
+        int before = population.get(tour+p1-1), first = population.get(tour+p1);
+        int last = population.get(tour+p2), after = population.get(tour+(p2+1)%SIZE);
+        long delta = hasher.edge(before, last) ^ hasher.edge(first, after)
+            ^ hasher.edge(before, first) ^ hasher.edge(last, after);
+        for(int i = tour+p1; hasher.directed() && i < tour+p2; i++) {
+            int city = population.get(i), next = population.get(i+1);
+            delta ^= hasher.edge(next, city) ^ hasher.edge(city, next);
+        }
+        return delta;
     }
     
     /**
@@ -494,7 +1749,7 @@ public class TSP_GA
      */
     private int selectBest() {
         int best = 0;
-        for(int i = 0; i < POPULATION_SIZE; i++) {
+        for(int i = 0; i < populationSize; i++) {
             if(fitness[i] < fitness[best]) {
                 best = i;
             }
@@ -502,23 +1757,13 @@ public class TSP_GA
         return best;
     }
     
-    /**
-     * @return A copy of the array entered.
-     */
-    private int[] copy(int[] original) {
-        int copy[] = new int[original.length];
-        for(int i = 0; i < original.length; i++) {
-            copy[i] = original[i];
-        }
-        return copy;
-    }
-    
     /**
      * @return The stats of the current population.
      */
     private String generationStats() {
-        int worst = 0, mean = 0, best = 0;
-        for(int i = 0; i < POPULATION_SIZE; i++) {
+        int worst = 0, best = 0;
+        long mean = 0;
+        for(int i = 0; i < populationSize; i++) {
             mean += fitness[i];
             if(fitness[i] > fitness[worst]) {
                 worst = i;
@@ -527,19 +1772,20 @@ public class TSP_GA
                 best = i;
             }
         }
-        mean = mean/POPULATION_SIZE;
+        mean = mean/populationSize;
         return fitness[worst]+":"+mean+":"+fitness[best];
     }
     
     /**
      * @return Route order
      */
-    private String printRoute(int[] individual) {
-        String returnString = "";
+    String printRoute(int[] individual) {
+        // One builder rather than a new string per city, which was O(SIZE^2)
+        StringBuilder route = new StringBuilder(SIZE*6);
         for(int i = 0; i < SIZE; i++) {
-            returnString += (individual[i]+1) + ":";
+            route.append(individual[i]+1).append(':');
         }
-        returnString += (individual[0]+1);
-        return returnString;
+        route.append(individual[0]+1);
+        return route.toString();
     }
 }
\ No newline at end of file
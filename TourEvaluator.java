@@ -0,0 +1,139 @@
+import java.lang.reflect.Constructor;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Scores the routes of a population: the sum of the costs of every edge,
+ * including the edge back to the start.
+ * This is the scalar evaluator, one edge at a time through CostMatrix. The
+ * vector evaluator, VectorTourEvaluator, sums many edges at a time with the
+ * incubating Java Vector API; it is compiled on its own from vector/ (see
+ * README.TXT) and create() loads it by name, so the GA compiles and runs
+ * without it or the jdk.incubator.vector module, falling back to the scalar
+ * evaluator. Both give the same costs. The vector evaluator reads the costs
+ * from one flattened int[], which is built once per cost matrix, see
+ * flattened(), and shared by every GA on it.
+ * An evaluator is used by one thread at a time, see copy().
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class TourEvaluator
+{
+    // ########## CONSTANTS ##########
+    // Loaded by name from the package of this class, the default package but for the JMH build
+    private static final String VECTOR_EVALUATOR =
+        TourEvaluator.class.getName().replace("TourEvaluator", "VectorTourEvaluator");
+    static final int MAX_VECTOR_SIZE = 4096; // Most cities flattened for the vector evaluator, a 64MB int[]
+    // Flattened costs by matrix, held for as long as the matrix is. Guarded by the class lock.
+    private static final Map<CostMatrix, int[]> FLATTENED = new WeakHashMap<CostMatrix, int[]>();
+
+    // ########## VARIABLES ##########
+    protected final CostMatrix cost; // The TSP costs
+    protected final int size; // The number of cities
+
+    /**
+     * @param cost The TSP costs.
+     */
+    public TourEvaluator(CostMatrix cost) {
+        this.cost = cost;
+        size = cost.size();
+    }
+
+    /**
+     * Creates the evaluator of a run.
+     * @param cost The TSP costs.
+     * @param evaluation TSP_GA.SCALAR_EVALUATION, or TSP_GA.VECTOR_EVALUATION
+     *                   for the vector evaluator where it is compiled, the
+     *                   Vector API is available (run with --add-modules
+     *                   jdk.incubator.vector) and the TSP has at most 4096
+     *                   cities. A sparse TSP is
+     *                   not flattened to SIZE^2 costs, so is always scalar.
+     * @return The evaluator.
+     */
+    public static TourEvaluator create(CostMatrix cost, int evaluation) {
+        if(evaluation == TSP_GA.VECTOR_EVALUATION && cost.size() <= MAX_VECTOR_SIZE
+            && !(cost instanceof SparseCostMatrix)) {
+            try {
+                Constructor<?> vector = Class.forName(VECTOR_EVALUATOR).getConstructor(CostMatrix.class);
+                return (TourEvaluator)vector.newInstance(cost);
+            }
+            catch (ReflectiveOperationException | LinkageError e) {
+                // The Vector API is not available, use the scalar evaluator
+            }
+        }
+        return new TourEvaluator(cost);
+    }
+
+    /**
+     * Flattens the costs of a TSP into one int[] indexed by from*SIZE+to, the
+     * first time it is asked for each cost matrix. The array is held for as
+     * long as the matrix is in use, and every later call for the matrix, from
+     * any GA, gets the same array, so it is built and held once however many
+     * GAs run on the TSP. Calls for other matrices wait while one is built.
+     * @param cost The TSP costs, of at most MAX_VECTOR_SIZE cities.
+     * @return The flattened costs, not to be written.
+     */
+    protected static synchronized int[] flattened(CostMatrix cost) {
+        int[] costs = FLATTENED.get(cost);
+        if(costs == null) {
+            int size = cost.size();
+            if(size > MAX_VECTOR_SIZE) {
+                throw new IllegalArgumentException("Too many cities to flatten: "+size);
+            }
+            costs = new int[size*size];
+            for(int from = 0; from < size; from++) {
+                for(int to = 0; to < size; to++) {
+                    costs[from*size+to] = cost.cost(from, to);
+                }
+            }
+            FLATTENED.put(cost, costs);
+        }
+        return costs;
+    }
+
+    /**
+     * @return True if this evaluator uses the Vector API.
+     */
+    public boolean vectorised() {
+        return false;
+    }
+
+    /**
+     * @return An evaluator of the same TSP for another thread.
+     */
+    public TourEvaluator copy() {
+        return this; // Holds no state
+    }
+
+    /**
+     * Calculates the full cost of a route.
+     * @param tours The population of the route.
+     * @param individual The individual to cost.
+     * @return The cost of the route.
+     */
+    public int cost(Population tours, int individual) {
+        int start = tours.offset(individual), end = start+size-1;
+        int fitness = 0;
+        for(int i = start; i < end; i++) {
+            // Add the cost of this position to the next
+            fitness += cost.cost(tours.get(i), tours.get(i+1));
+        }
+        // Add cost of the returning back to the start position
+        fitness += cost.cost(tours.get(end), tours.get(start));
+        return fitness;
+    }
+
+    /**
+     * Calculates the full cost of several routes.
+     * @param tours The population of the routes.
+     * @param first The first individual to cost.
+     * @param count The number of individuals to cost, from first.
+     * @param fitness Set to the cost of each, at the index of the individual.
+     */
+    public void evaluate(Population tours, int first, int count, int[] fitness) {
+        for(int i = first; i < first+count; i++) {
+            fitness[i] = cost(tours, i);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist style hashing of tours by their edge sets.
+ * Each city has a random 64 bit key, an edge hashes the sum of the keys of its
+ * two cities, and a tour is the XOR of its edge hashes. The sum makes an edge
+ * the same both ways round, and XOR ignores order, so a tour has the same hash
+ * whichever city it starts from and in either direction. Changing a few edges
+ * changes the hash by the XOR of the old and new edges, see edge().
+ * For an asymmetric TSP, where a route costs more one way round, the hashes
+ * are directed: each city has a second key for edges arriving at it, so an
+ * edge and a tour hash differently each way round.
+ * Equal tours always have equal hashes; different tours of the same TSP share
+ * a hash with a chance of about 2^-64.
+ * The keys are fixed by the number of cities, so hashes of any two GAs on the
+ * same TSP can be compared. Read only once made, so one can be shared by any
+ * number of threads.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class TourHash
+{
+    // ########## CONSTANTS ##########
+    private static final long SEED = 0x2545F4914F6CDD1DL; // Seed of the city keys
+
+    // ########## VARIABLES ##########
+    private final long[] keys; // Random key of each city
+    private final long[] arriving; // Key of each city an edge goes to, keys unless directed
+
+    /**
+     * @param size The number of cities.
+     * @param directed True to hash edges and tours differently each way round.
+     */
+    public TourHash(int size, boolean directed) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        keys = new long[size];
+        for(int i = 0; i < size; i++) {
+            keys[i] = random.nextLong();
+        }
+        arriving = directed ? new long[size] : keys;
+        for(int i = 0; directed && i < size; i++) {
+            arriving[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * @return True if edges hash differently each way round.
+     */
+    public boolean directed() {
+        return arriving != keys;
+    }
+
+    /**
+     * @param a The city the edge leaves.
+     * @param b The city the edge goes to.
+     * @return The hash of the edge, the same both ways round unless directed.
+     */
+    public long edge(int a, int b) {
+        long z = keys[a]+arriving[b];
+        // The SplitMix64 finaliser, so sums of keys do not combine linearly
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Hashes a whole tour, in O(SIZE).
+     * @param route The tour.
+     * @return The hash of its edges.
+     */
+    public long of(int[] route) {
+        long hash = 0;
+        int last = route.length-1;
+        for(int i = 0; i < last; i++) {
+            hash ^= edge(route[i], route[i+1]);
+        }
+        return hash ^ edge(route[last], route[0]);
+    }
+
+    /**
+     * Hashes a whole tour of a population, in O(SIZE).
+     * @param population The population.
+     * @param individual The individual.
+     * @return The hash of its edges.
+     */
+    public long of(Population population, int individual) {
+        int start = population.offset(individual), end = start+population.size()-1;
+        long hash = 0;
+        for(int i = start; i < end; i++) {
+            hash ^= edge(population.get(i), population.get(i+1));
+        }
+        return hash ^ edge(population.get(end), population.get(start));
+    }
+}
@@ -0,0 +1,79 @@
+package tspga;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the scalar and vector TourEvaluator, each scoring the
+ * whole first population of the GA, on the instances of GABenchmark the
+ * vector evaluator takes (at most 4096 cities). Both run in forks with the
+ * jdk.incubator.vector module, so they differ only by evaluator, and are
+ * checked to agree before they are measured.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EvaluatorBenchmark
+{
+    // ########## VARIABLES ##########
+    @Param({"groetschel.tsp", "dantzig.tsp", "1000"})
+    public String instance; // A TSPLIB file, or a number of cities
+    private TSP_GA ga; // The GA, with the population to score
+    private TourEvaluator scalar, vector;
+    private int[] fitness; // The costs of the population
+
+    /**
+     * Loads the instance, starts the GA on it and checks the evaluators agree.
+     * @throws IllegalStateException If the Vector API is not available, or
+     *         the evaluators do not agree.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ga = GABenchmark.start(GABenchmark.file(instance));
+        scalar = TourEvaluator.create(ga.cost(), TSP_GA.SCALAR_EVALUATION);
+        vector = TourEvaluator.create(ga.cost(), TSP_GA.VECTOR_EVALUATION);
+        if(!vector.vectorised()) {
+            throw new IllegalStateException("The Vector API is not available");
+        }
+        int populationSize = ga.populationSize();
+        fitness = new int[populationSize];
+        int[] vectorFitness = new int[populationSize];
+        scalar.evaluate(ga.parents(), 0, populationSize, fitness);
+        vector.evaluate(ga.parents(), 0, populationSize, vectorFitness);
+        if(!Arrays.equals(fitness, vectorFitness)) {
+            throw new IllegalStateException("Vector evaluation differs from scalar: " + instance);
+        }
+    }
+
+    @Benchmark
+    public int evaluateScalar() {
+        scalar.evaluate(ga.parents(), 0, fitness.length, fitness);
+        return fitness[0];
+    }
+
+    @Benchmark
+    public int evaluateVector() {
+        vector.evaluate(ga.parents(), 0, fitness.length, fitness);
+        return fitness[0];
+    }
+}
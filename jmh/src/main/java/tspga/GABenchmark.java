@@ -0,0 +1,167 @@
+package tspga;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the GA hot paths: load(), initialise(), evaluate(), each
+ * selection, crossover and mutation operator, and whole generations, on the
+ * instances of the in-process Benchmark: TSPLIB files, or a number of cities
+ * for its seeded random EUC_2D instance.
+ * Each benchmark runs in forked JVMs, with the GA set up the same way as
+ * Benchmark does, from the same seeds. Run with -prof gc for the allocation
+ * rate and bytes per operation, e.g. from the project directory:
+ *   java -jar jmh/target/benchmarks.jar -prof gc
+ *   java -jar jmh/target/benchmarks.jar -prof gc -p instance=dantzig.tsp pmx
+ * The scalar and vector evaluators are compared by EvaluatorBenchmark.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GABenchmark
+{
+    // ########## CONSTANTS ##########
+    static final long SEED = 42; // Seed of the GA, as in Benchmark
+    private static final int PAIRS = 1024; // Random parent pairs, reused in turn
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    // ########## VARIABLES ##########
+    @Param({"groetschel.tsp", "dantzig.tsp", "1000", "10000", "100000"})
+    public String instance; // A TSPLIB file, or a number of cities
+    private String file; // The file of the instance
+    private TSP_GA ga; // The GA, with a scored first population
+    private int size; // The number of cities
+    private int[] parents; // Parent pairs, drawn up front so the operators are timed alone
+    private int pair; // The next parent pair
+
+    /**
+     * Loads the instance and starts the GA on it.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = file(instance);
+        ga = start(file);
+        size = ga.size();
+        parents = new int[2*PAIRS];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for(int i = 0; i < parents.length; i++) {
+            parents[i] = random.nextInt(ga.populationSize());
+        }
+        ga.buildRoulette();
+    }
+
+    /**
+     * @param instance A TSPLIB file, or a number of cities.
+     * @return The file of the instance, written if it is random.
+     */
+    static String file(String instance) throws IOException {
+        if(instance.matches("\\d+")) {
+            // Named in full, as the annotation of the same name hides the class
+            return tspga.Benchmark.synthetic(Integer.parseInt(instance)).toString();
+        }
+        return instance;
+    }
+
+    /**
+     * @param file A TSPLIB file.
+     * @return A GA on the file with its first population scored.
+     */
+    static TSP_GA start(String file) {
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        TSP_GA ga = new TSP_GA(file);
+        System.setOut(out);
+        ga.reseed(new GARandom(SEED));
+        ga.start();
+        return ga;
+    }
+
+    @Benchmark
+    public int load() {
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        ga.load(file);
+        System.setOut(out);
+        return ga.size();
+    }
+
+    @Benchmark
+    public Population initialise() {
+        ga.initialise();
+        return ga.parents();
+    }
+
+    @Benchmark
+    public int evaluate() {
+        ga.evaluate();
+        return ga.bestFitness();
+    }
+
+    @Benchmark
+    public int tournamentSelect() {
+        return ga.tournamentSelect();
+    }
+
+    @Benchmark
+    public Population buildRoulette() {
+        ga.buildRoulette();
+        return ga.parents();
+    }
+
+    @Benchmark
+    public int rouletteSelect() {
+        return ga.rouletteSelect();
+    }
+
+    @Benchmark
+    public int pmx() {
+        int p = pair++ & (PAIRS-1);
+        ga.partiallyMappedCrossover(parents[2*p], parents[2*p+1], 0, 1);
+        return ga.children().get(size-1);
+    }
+
+    @Benchmark
+    public int cycleCrossover() {
+        int p = pair++ & (PAIRS-1);
+        ga.cycleCrossover(parents[2*p], parents[2*p+1], 0, 1);
+        return ga.children().get(size-1);
+    }
+
+    @Benchmark
+    public int exchangeMutation() {
+        return ga.exchangeMutation(parents[pair++ & (PAIRS-1)], 0);
+    }
+
+    @Benchmark
+    public int inversionMutation() {
+        return ga.inversionMutation(parents[pair++ & (PAIRS-1)], 0);
+    }
+
+    @Benchmark
+    public int generation() {
+        ga.step();
+        return ga.bestFitness();
+    }
+}
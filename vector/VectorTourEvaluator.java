@@ -0,0 +1,116 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A TourEvaluator that sums the edge costs of routes many lanes at a time
+ * with the Java Vector API (jdk.incubator.vector, compile and run with
+ * --add-modules jdk.incubator.vector).
+ * Kept out of the main source directory, so the rest compiles with a plain
+ * javac *.java; compile it after the rest, into the same output, with
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorTourEvaluator.java
+ * The costs are flattened into one int[] indexed by from*SIZE+to, so the cost
+ * of a vector of edges is one gather load. The array is built once per cost
+ * matrix and shared, see TourEvaluator.flattened(). evaluate() scores a
+ * vector width of routes per pass, one route per lane: the routes are copied
+ * in transposed, city j of every route side by side, so each step loads the
+ * j th edge of every route, gathers their costs and adds them to the route of
+ * its lane, and the lanes end up holding the costs with no reduction. Routes
+ * left over, and cost(), sum the edges of a single route a vector at a time.
+ * Sums are in int lanes, so a cost wraps just as in the scalar evaluator and
+ * the costs are the same. Only made by TourEvaluator.create(), for TSPs of up
+ * to 4096 cities.
+ *
+ * @author Matthew Mansell
+ * @version v2.1
+ */
+public class VectorTourEvaluator extends TourEvaluator
+{
+    // ########## CONSTANTS ##########
+    // At most 256 bits: wider gathers are not compiled to gather instructions
+    // by every JDK the API incubates in, and fall back to allocating per lane
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED.vectorBitSize() > 256
+        ? IntVector.SPECIES_256 : IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // ########## VARIABLES ##########
+    private final int[] costs; // Cost of every edge at from*size+to, shared by every evaluator of the TSP
+    private final int[] cities; // Routes of a pass, transposed, then the first city of each again
+    private final int[] route; // One route, then its first city again
+    private final int[] edges; // The index in costs of a vector of edges
+
+    /**
+     * Takes the flattened costs of a TSP, flattening them if no evaluator of
+     * the TSP has yet.
+     * @param cost The TSP costs, of at most 4096 cities.
+     */
+    public VectorTourEvaluator(CostMatrix cost) {
+        super(cost);
+        costs = flattened(cost);
+        cities = new int[(size+1)*LANES];
+        route = new int[size+1];
+        edges = new int[LANES];
+    }
+
+    /**
+     * Shares the flattened costs of another evaluator.
+     */
+    private VectorTourEvaluator(VectorTourEvaluator source) {
+        super(source.cost);
+        costs = source.costs;
+        cities = new int[source.cities.length];
+        route = new int[source.route.length];
+        edges = new int[LANES];
+    }
+
+    public boolean vectorised() {
+        return true;
+    }
+
+    public TourEvaluator copy() {
+        return new VectorTourEvaluator(this);
+    }
+
+    public int cost(Population tours, int individual) {
+        tours.read(individual, route);
+        route[size] = route[0]; // The edge back to the start
+        IntVector sum = IntVector.zero(SPECIES);
+        int i = 0;
+        for(; i <= size-LANES; i += LANES) {
+            IntVector from = IntVector.fromArray(SPECIES, route, i);
+            IntVector to = IntVector.fromArray(SPECIES, route, i+1);
+            from.mul(size).add(to).intoArray(edges, 0);
+            sum = sum.add(IntVector.fromArray(SPECIES, costs, 0, edges, 0));
+        }
+        int fitness = sum.reduceLanes(VectorOperators.ADD);
+        for(; i < size; i++) {
+            fitness += costs[route[i]*size+route[i+1]];
+        }
+        return fitness;
+    }
+
+    public void evaluate(Population tours, int first, int count, int[] fitness) {
+        int i = first, end = first+count;
+        for(; i <= end-LANES; i += LANES) {
+            for(int lane = 0; lane < LANES; lane++) {
+                int offset = tours.offset(i+lane);
+                for(int j = 0; j < size; j++) {
+                    cities[j*LANES+lane] = tours.get(offset+j);
+                }
+                cities[size*LANES+lane] = cities[lane];
+            }
+            IntVector sum = IntVector.zero(SPECIES);
+            IntVector from = IntVector.fromArray(SPECIES, cities, 0);
+            for(int j = 1; j <= size; j++) {
+                IntVector to = IntVector.fromArray(SPECIES, cities, j*LANES);
+                from.mul(size).add(to).intoArray(edges, 0);
+                sum = sum.add(IntVector.fromArray(SPECIES, costs, 0, edges, 0));
+                from = to;
+            }
+            sum.intoArray(fitness, i);
+        }
+        for(; i < end; i++) {
+            fitness[i] = cost(tours, i);
+        }
+    }
+}